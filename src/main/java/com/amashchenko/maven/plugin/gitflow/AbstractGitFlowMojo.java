@@ -15,12 +15,33 @@
  */
 package com.amashchenko.maven.plugin.gitflow;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.execution.MavenSession;
-import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
 import org.apache.maven.plugin.AbstractMojo;
@@ -30,10 +51,12 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
 import org.codehaus.plexus.components.interactivity.Prompter;
+import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
 
 /**
  * Abstract git flow mojo.
@@ -50,6 +73,10 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
     /** System line separator. */
     protected static final String LS = System.getProperty("line.separator");
 
+    /** Encoding declaration in XML prolog. */
+    private static final Pattern XML_ENCODING = Pattern
+            .compile("^<\\?xml[^>]*encoding=[\"']([\\w.:-]+)[\"']");
+
     /** Success exit code. */
     private static final int SUCCESS_EXIT_CODE = 0;
 
@@ -102,6 +129,59 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
     @Parameter(property = "fetchRemote", defaultValue = "true")
     protected boolean fetchRemote;
 
+    /**
+     * Whether to fetch tags with the remote branch. If <code>false</code>
+     * git fetch is executed with <code>--no-tags</code>, so the remote
+     * doesn't have to advertise its tags.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "fetchTags", defaultValue = "true")
+    private boolean fetchTags = true;
+
+    /**
+     * Number of commits to deepen the history of shallow clones by when
+     * fetching (<code>--deepen</code>), 0 to keep the shallow boundary. The
+     * boundary is never reset to a smaller depth, which could cut off the
+     * merge base of the branches. Ignored in complete clones, which are not
+     * made shallow.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "fetchDepth", defaultValue = "0")
+    private int fetchDepth = 0;
+
+    /**
+     * Object filter of the fetch in partial clones, e.g.
+     * <code>tree:0</code>. Defaults to the
+     * <code>remote.&lt;origin&gt;.partialclonefilter</code> configuration
+     * or <code>blob:none</code>. Ignored in complete clones.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "fetchFilter")
+    private String fetchFilter;
+
+    /**
+     * Time in seconds a fetched remote branch is considered up to date, 0 to
+     * always fetch. Times of the fetches are kept in
+     * <code>.git/gitflow/fetch.cache</code>, so goals executed one after
+     * another don't fetch the same branch again.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "fetchCacheTime", defaultValue = "0")
+    private int fetchCacheTime = 0;
+
+    /**
+     * Whether to fetch remote branches even if they were fetched within
+     * <code>fetchCacheTime</code>.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "forceFetch", defaultValue = "false")
+    private boolean forceFetch = false;
+
     /**
      * Whether to push to the remote.
      * 
@@ -116,7 +196,116 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      * @since 1.0.7
      */
     @Parameter(property = "verbose", defaultValue = "false")
-    private boolean verbose = false;
+    protected boolean verbose = false;
+
+    /**
+     * Whether to validate branch names with the
+     * <code>git check-ref-format</code> command instead of the built-in
+     * validation.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "gitCheckRefFormat", defaultValue = "false")
+    private boolean gitCheckRefFormat = false;
+
+    /**
+     * Whether to commit version changes with <code>git commit -a</code>
+     * instead of committing only the POM (and Tycho metadata) files.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "gitCommitAll", defaultValue = "false")
+    private boolean gitCommitAll = false;
+
+    /**
+     * Whether to collect tag creation and branch deletion in the
+     * <code>-finish</code> goals and apply them at once in a single
+     * <code>git update-ref --stdin</code> transaction.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "atomicRefUpdates", defaultValue = "false")
+    private boolean atomicRefUpdates = false;
+
+    /**
+     * Number of branches shown per page when choosing a branch interactively.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "branchPageSize", defaultValue = "20")
+    private int branchPageSize = 20;
+
+    /**
+     * Timeout in seconds of the local Git commands, 0 for no timeout. On
+     * timeout the command and all processes started by it are killed.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "gitTimeout", defaultValue = "0")
+    private int gitTimeout = 0;
+
+    /**
+     * Timeout in seconds of the Git commands accessing remote repositories,
+     * i.e. fetch, pull, push, ls-remote and clone, 0 for no timeout.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "gitNetworkTimeout", defaultValue = "0")
+    private int gitNetworkTimeout = 0;
+
+    /**
+     * Timeout in seconds of the Maven commands, 0 for no timeout.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "mvnTimeout", defaultValue = "0")
+    private int mvnTimeout = 0;
+
+    /**
+     * Whether to add the directories of the reactor modules to the sparse
+     * checkout before executing Maven commands if the repository uses sparse
+     * checkout. Other directories are not checked out.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "sparseCheckoutModules", defaultValue = "true")
+    private boolean sparseCheckoutModules = true;
+
+    /**
+     * Whether to update versions of the <code>tychoBuild</code> project
+     * in-process instead of executing the Tycho versions plugin. POM files,
+     * <code>Bundle-Version</code> of the manifests, <code>feature.xml</code>,
+     * <code>category.xml</code> and <code>*.product</code> files are
+     * rewritten directly. The Tycho versions plugin is still executed if the
+     * project layout is not supported.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "tychoNativeVersions", defaultValue = "true")
+    private boolean tychoNativeVersions = true;
+
+    /**
+     * Whether to check that the branch merges w/o conflicts into all target
+     * branches before anything is changed. The merges are done in memory with
+     * <code>git merge-tree</code> (Git 2.38 or newer) and run concurrently,
+     * conflicts of all targets are reported at once.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "mergeConflictCheck", defaultValue = "true")
+    private boolean mergeConflictCheck = true;
+
+    /**
+     * File to write the changelog of the finished version to in the
+     * <code>release-finish</code> and <code>hotfix-finish</code> goals. The
+     * changelog lists the commits since the previous version tag, it is
+     * written as JSON if the file name ends with <code>.json</code> and as
+     * Markdown otherwise. Not written if not set.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "changelogFile")
+    private File changelogFile;
 
     /**
      * The path to the Maven executable. Defaults to "mvn".
@@ -129,6 +318,33 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
     @Parameter(property = "gitExecutable")
     private String gitExecutable;
 
+    /** Location of the repository. */
+    private GitRepositoryCache.Repository repository;
+
+    /** Project directory relative to the working tree root. */
+    private String projectPathPrefix;
+
+    /** Pending reference changes, <code>null</code> if not started. */
+    private GitRefTransaction refTransaction;
+
+    /** Module directories added to the sparse checkout. */
+    private final Set<String> sparseDirectories = new HashSet<String>();
+
+    /** Index of the version tags, <code>null</code> if not built yet. */
+    private VersionTagIndex versionTagIndex;
+
+    /** Changelog written in background, <code>null</code> if not started. */
+    private FutureTask<File> changelog;
+
+    /** Fetch running in background, <code>null</code> if not started. */
+    private FutureTask<CommandResult> prefetch;
+
+    /** Branches fetched by {@link #prefetch}. */
+    private final Set<String> prefetchBranches = new HashSet<String>();
+
+    /** Times of the last fetches, <code>null</code> if not loaded yet. */
+    private GitFetchCache fetchCache;
+
     /** Maven session. */
     @Component
     private MavenSession mavenSession;
@@ -159,6 +375,14 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
             }
             cmdGit.setExecutable(gitExecutable);
         }
+
+        // commands are executed in the directory Maven was executed from,
+        // which is not the current directory of a resident JVM
+        final File workDir = getWorkingDirectory();
+        if (workDir != null) {
+            cmdMvn.setWorkingDirectory(workDir);
+            cmdGit.setWorkingDirectory(workDir);
+        }
     }
 
     /**
@@ -192,6 +416,83 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Gets project version from pom.xml file of the given branch w/o checking
+     * it out. The file is read from the Git object database. Version
+     * inherited from the parent and properties used in version are resolved
+     * with the parent POM files in the repository.
+     * 
+     * @param branchName
+     *            Branch to read the version from.
+     * @return Project version.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected String getProjectVersion(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        String path = getProjectPathPrefix() + "pom.xml";
+        String content = gitReadFile(branchName, path);
+        if (content == null) {
+            throw new MojoFailureException("Cannot read '" + path + "' from '"
+                    + branchName + "'.");
+        }
+
+        String version = PomVersionUpdater.getVersion(content);
+        if (version == null) {
+            throw new MojoFailureException(
+                    "Cannot get current project version. This plugin should be executed from the parent project.");
+        }
+
+        // resolve ${...} with properties of the POM and its parents
+        int start;
+        while (content != null && (start = version.indexOf("${")) >= 0) {
+            final int end = version.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            final String value = PomVersionUpdater.getProperty(content,
+                    version.substring(start + 2, end));
+            if (value != null) {
+                version = version.substring(0, start) + value
+                        + version.substring(end + 1);
+            } else {
+                final String parentPath = PomVersionUpdater
+                        .getParentPath(content);
+                if (parentPath == null) {
+                    break;
+                }
+                final String dir = path.substring(0,
+                        path.lastIndexOf('/') + 1);
+                path = normalizePath(dir + parentPath);
+                content = gitReadFile(branchName, path);
+            }
+        }
+
+        if (version.contains("${")) {
+            throw new MojoFailureException("Cannot resolve project version '"
+                    + version + "' from '" + branchName + "'.");
+        }
+        return version;
+    }
+
+    /**
+     * Reads single text file from the given revision.
+     * 
+     * @param revision
+     *            Revision to read file from.
+     * @param path
+     *            Path of the file relative to the repository root.
+     * @return File content or <code>null</code> if it doesn't exist.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private String gitReadFile(final String revision, final String path)
+            throws MojoFailureException, CommandLineException {
+        final byte[] data = gitReadFiles(revision,
+                Collections.singletonList(path)).get(path);
+        return data == null ? null : decodeXml(data);
+    }
+
     /**
      * Compares the production branch name with the development branch name.
      * 
@@ -218,18 +519,97 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
         }
     }
 
-    protected void checkSnapshotDependencies() throws MojoFailureException {
+    /**
+     * Checks reactor projects for SNAPSHOT versions in parents, dependencies,
+     * dependency management, plugins, plugin dependencies and extensions.
+     * Reports all found SNAPSHOT versions at once.
+     * 
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void checkSnapshotDependencies() throws MojoFailureException,
+            CommandLineException {
         getLog().info("Checking for SNAPSHOT versions in dependencies.");
-        List<MavenProject> projects = mavenSession.getProjects();
-        for (MavenProject project : projects) {
-            List<Dependency> dependencies = project.getDependencies();
-            for (Dependency d : dependencies) {
-                if (ArtifactUtils.isSnapshot(d.getVersion())) {
+
+        final Map<String, List<String>> snapshots = SnapshotDependencyScanner
+                .scan(mavenSession.getProjects());
+
+        if (!snapshots.isEmpty()) {
+            final StringBuilder str = new StringBuilder(
+                    "There is some SNAPSHOT dependencies in the project:");
+            for (Map.Entry<String, List<String>> entry : snapshots.entrySet()) {
+                str.append(LS).append(entry.getKey()).append(":");
+                for (String coordinate : entry.getValue()) {
+                    str.append(LS).append("    ").append(coordinate);
+                }
+            }
+            str.append(LS).append(
+                    "Change them or ignore with `allowSnapshots` property.");
+            throw new MojoFailureException(str.toString());
+        }
+    }
+
+    /**
+     * Gets Git directory, i.e. <code>.git</code> directory of the repository.
+     * 
+     * @return Git directory.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected File getGitDir() throws MojoFailureException,
+            CommandLineException {
+        return getRepository().getGitDir();
+    }
+
+    /**
+     * Gets location of the repository, cached for the working directory
+     * across executions in the same JVM.
+     * 
+     * @return Repository.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private GitRepositoryCache.Repository getRepository()
+            throws MojoFailureException, CommandLineException {
+        if (repository == null) {
+            final File workDir = getWorkingDirectory();
+            final File key = workDir != null ? workDir : new File(
+                    System.getProperty("user.dir"));
+            repository = GitRepositoryCache.getRepository(key);
+            if (repository == null) {
+                // git rev-parse --git-dir --show-toplevel
+                final String[] lines = executeGitCommandReturn("rev-parse",
+                        "--git-dir", "--show-toplevel").trim().split(
+                        "\\r?\\n");
+                if (lines.length < 2) {
                     throw new MojoFailureException(
-                            "There is some SNAPSHOT dependencies in the project. Change them or ignore with `allowSnapshots` property.");
+                            "Cannot get location of the repository.");
                 }
+                File dir = new File(lines[0].trim());
+                if (!dir.isAbsolute()) {
+                    dir = new File(key, lines[0].trim());
+                }
+                repository = new GitRepositoryCache.Repository(
+                        dir.getAbsoluteFile(), lines[1].trim());
+                GitRepositoryCache.putRepository(key, repository);
             }
         }
+        return repository;
+    }
+
+    /**
+     * Gets directory to execute commands in, i.e. the directory Maven was
+     * executed from.
+     * 
+     * @return Working directory or <code>null</code> to use the current
+     *         directory of the process.
+     */
+    private File getWorkingDirectory() {
+        if (mavenSession != null
+                && mavenSession.getExecutionRootDirectory() != null) {
+            return new File(mavenSession.getExecutionRootDirectory());
+        }
+        return null;
     }
 
     /**
@@ -244,6 +624,10 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      */
     protected boolean validBranchName(final String branchName)
             throws MojoFailureException, CommandLineException {
+        if (!gitCheckRefFormat) {
+            return GitRefFormat.isValid(branchName);
+        }
+
         CommandResult r = executeGitCommandExitCode("check-ref-format",
                 "--allow-onelevel", branchName);
         return r.getExitCode() == SUCCESS_EXIT_CODE;
@@ -299,23 +683,114 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      */
     protected void initGitFlowConfig() throws MojoFailureException,
             CommandLineException {
-        gitSetConfig("gitflow.branch.master",
+        final Map<String, String> config = new LinkedHashMap<String, String>();
+        config.put("gitflow.branch.master",
                 gitFlowConfig.getProductionBranch());
-        gitSetConfig("gitflow.branch.develop",
+        config.put("gitflow.branch.develop",
                 gitFlowConfig.getDevelopmentBranch());
 
-        gitSetConfig("gitflow.prefix.feature",
+        config.put("gitflow.prefix.feature",
                 gitFlowConfig.getFeatureBranchPrefix());
-        gitSetConfig("gitflow.prefix.release",
+        config.put("gitflow.prefix.release",
                 gitFlowConfig.getReleaseBranchPrefix());
-        gitSetConfig("gitflow.prefix.hotfix",
+        config.put("gitflow.prefix.hotfix",
                 gitFlowConfig.getHotfixBranchPrefix());
-        gitSetConfig("gitflow.prefix.support",
+        config.put("gitflow.prefix.support",
                 gitFlowConfig.getSupportBranchPrefix());
-        gitSetConfig("gitflow.prefix.versiontag",
+        config.put("gitflow.prefix.versiontag",
                 gitFlowConfig.getVersionTagPrefix());
 
-        gitSetConfig("gitflow.origin", gitFlowConfig.getOrigin());
+        config.put("gitflow.origin", gitFlowConfig.getOrigin());
+
+        final File configFile = new File(getGitDir(), "config");
+        final Map<String, String> current = gitGetConfig(configFile,
+                "--local");
+
+        // set only changed options
+        final Map<String, String> values = new LinkedHashMap<String, String>(
+                current);
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            final String value = entry.getValue() == null ? "" : entry
+                    .getValue();
+            if (!value.equals(current.get(entry.getKey()))) {
+                gitSetConfig(entry.getKey(), value);
+                values.put(entry.getKey(), value);
+                changed = true;
+            }
+        }
+        if (changed) {
+            GitRepositoryCache.putConfig(configFile, values);
+        }
+    }
+
+    /**
+     * Gets options from the repository configuration, including the per
+     * working tree configuration if it is enabled. Global and system
+     * configuration is not read.
+     * 
+     * @return Option values by name.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private Map<String, String> gitGetConfig() throws MojoFailureException,
+            CommandLineException {
+        final Map<String, String> values = gitGetConfig(new File(
+                getGitDir(), "config"), "--local");
+        if (!"true".equalsIgnoreCase(values.get("extensions.worktreeconfig"))) {
+            return values;
+        }
+        // e.g. sparse checkout options are written to config.worktree
+        final Map<String, String> all = new LinkedHashMap<String, String>(
+                values);
+        all.putAll(gitGetConfig(new File(getGitDir(), "config.worktree"),
+                "--worktree"));
+        return all;
+    }
+
+    /**
+     * Gets options from the configuration file of the scope. Options are
+     * cached while the configuration file is not changed.
+     * 
+     * @param configFile
+     *            Configuration file of the scope.
+     * @param scope
+     *            Scope option, <code>--local</code> or <code>--worktree</code>.
+     * @return Option values by name.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private Map<String, String> gitGetConfig(final File configFile,
+            final String scope) throws MojoFailureException,
+            CommandLineException {
+        Map<String, String> values = GitRepositoryCache.getConfig(configFile);
+        if (values == null) {
+            values = new LinkedHashMap<String, String>();
+
+            String out = "";
+            try {
+                // git config --local --list -z
+                out = new String(executeGitCommandRaw(null, "config", scope,
+                        "--list", "-z"), "UTF-8");
+            } catch (MojoFailureException e) {
+                // no configuration
+                getLog().debug(e);
+            } catch (UnsupportedEncodingException e) {
+                throw new MojoFailureException("Cannot read configuration.", e);
+            }
+            // <name> LF <value> NUL, values can contain line breaks
+            for (String entry : out.split("\0")) {
+                final int lf = entry.indexOf('\n');
+                if (lf > 0) {
+                    values.put(entry.substring(0, lf), entry.substring(lf + 1));
+                } else if (entry.length() > 0) {
+                    // boolean option w/o value
+                    values.put(entry, "true");
+                }
+            }
+            GitRepositoryCache.putConfig(configFile, values);
+        }
+        return values;
     }
 
     /**
@@ -328,14 +803,120 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    private void gitSetConfig(final String name, String value)
+    private void gitSetConfig(final String name, final String value)
             throws MojoFailureException, CommandLineException {
-        if (value == null || value.isEmpty()) {
-            value = "\"\"";
+        try {
+            // not through the shell, so the empty value is stored as is and
+            // not as a quoted string
+            executeGitCommandRaw(null, "config", name, value == null ? ""
+                    : value);
+        } catch (MojoFailureException e) {
+            // ignore error exit codes
+            getLog().debug(e);
+        }
+    }
+
+    /**
+     * Checks if the repository is a partial clone of the origin, i.e.
+     * objects missing locally are fetched from the origin on demand.
+     * 
+     * @return <code>true</code> if the origin is the promisor remote.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean isPartialClone() throws MojoFailureException,
+            CommandLineException {
+        final Map<String, String> config = gitGetConfig();
+        return gitFlowConfig.getOrigin().equals(
+                config.get("extensions.partialclone"))
+                || "true".equalsIgnoreCase(config.get("remote."
+                        + gitFlowConfig.getOrigin() + ".promisor"));
+    }
+
+    /**
+     * Checks if the repository uses sparse checkout.
+     * 
+     * @return <code>true</code> if sparse checkout is enabled.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean isSparseCheckout() throws MojoFailureException,
+            CommandLineException {
+        final Map<String, String> config = gitGetConfig();
+        return "true".equalsIgnoreCase(config.get("core.sparsecheckout"));
+    }
+
+    /**
+     * Checks if the sparse checkout uses cone mode, i.e. directories instead
+     * of patterns.
+     * 
+     * @return <code>true</code> if the sparse checkout is in cone mode.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private boolean isSparseCheckoutCone() throws MojoFailureException,
+            CommandLineException {
+        final Map<String, String> config = gitGetConfig();
+        return "true".equalsIgnoreCase(config.get("core.sparsecheckoutcone"));
+    }
+
+    /**
+     * Adds the directories of the project modules of the current branch to
+     * the sparse checkout, so POM files and sources needed by Maven are in
+     * the working tree while other directories are not checked out. Module
+     * POM files are read from the object database. Executes git
+     * sparse-checkout add only for the directories not added before.
+     * 
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitSparseCheckoutModules() throws MojoFailureException,
+            CommandLineException {
+        if (!sparseCheckoutModules || !isSparseCheckout()) {
+            return;
+        }
+
+        final List<String> dirs = new ArrayList<String>();
+        for (String path : gitReadProjectPoms("HEAD", getProjectPathPrefix())
+                .keySet()) {
+            // files in the root directory are always checked out
+            final int slash = path.lastIndexOf('/');
+            if (slash > 0 && sparseDirectories.add(path.substring(0, slash))) {
+                dirs.add(path.substring(0, slash));
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+
+        getLog().info(
+                "Adding module directories to the sparse checkout: "
+                        + StringUtils.join(dirs.iterator(), ", "));
+
+        final List<String> args = new ArrayList<String>();
+        args.add("sparse-checkout");
+        args.add("add");
+        if (isSparseCheckoutCone()) {
+            getLog().info(
+                    "The files directly in the parent directories of the "
+                            + "modules are checked out too (cone mode).");
+            args.addAll(dirs);
+        } else {
+            // patterns are in .gitignore format, anchor them to the root
+            for (String dir : dirs) {
+                args.add("/" + dir.replaceAll("([\\\\*?\\[!#])", "\\\\$1")
+                        + "/");
+            }
         }
 
-        // ignore error exit codes
-        executeGitCommandExitCode("config", name, value);
+        // git sparse-checkout add module1 module2 ...
+        final CommandResult result = executeGitCommandExitCode(args
+                .toArray(new String[args.size()]));
+        if (result.getExitCode() != SUCCESS_EXIT_CODE) {
+            getLog().warn(
+                    "Cannot add module directories to the sparse checkout. "
+                            + result.getError());
+        }
     }
 
     /**
@@ -374,180 +955,1878 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
     }
 
     /**
-     * Checks if local branch with given name exists.
+     * Executes git for-each-ref sorted by the most recent commit date.
      * 
-     * @param branchName
-     *            Name of the branch to check.
-     * @return <code>true</code> if local branch exists, <code>false</code>
-     *         otherwise.
+     * @param branchPrefix
+     *            Prefix of the branches to find.
+     * @return List of branch names which match
+     *         <code>refs/heads/{branchPrefix}*</code>, the most recently
+     *         committed branch first.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected boolean gitCheckBranchExists(final String branchName)
+    protected List<String> gitListBranchesByDate(final String branchPrefix)
             throws MojoFailureException, CommandLineException {
-        CommandResult commandResult = executeGitCommandExitCode("show-ref",
-                "--verify", "--quiet", "refs/heads/" + branchName);
-        return commandResult.getExitCode() == SUCCESS_EXIT_CODE;
+        String branches = executeGitCommandReturn("for-each-ref",
+                "--sort=-committerdate", "--format=\"%(refname:short)\"",
+                "refs/heads/" + branchPrefix + "*");
+
+        final List<String> result = new ArrayList<String>();
+        if (StringUtils.isNotBlank(branches)) {
+            // see gitFindBranches
+            branches = branches.replaceAll("\"", "");
+            for (String branch : branches.split("\\r?\\n")) {
+                if (StringUtils.isNotBlank(branch)) {
+                    result.add(branch.trim());
+                }
+            }
+        }
+        return result;
     }
 
     /**
-     * Executes git checkout.
+     * Executes git for-each-ref on tags sorted by the creation date.
      * 
-     * @param branchName
-     *            Branch name to checkout.
+     * @param tagPrefix
+     *            Prefix of the tags to find.
+     * @return List of tag names which match <code>refs/tags/{tagPrefix}*</code>,
+     *         the most recently created tag first.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitCheckout(final String branchName)
+    protected List<String> gitListTagsByDate(final String tagPrefix)
             throws MojoFailureException, CommandLineException {
-        getLog().info("Checking out '" + branchName + "' branch.");
-
-        executeGitCommand("checkout", branchName);
+        String tags = executeGitCommandReturn("for-each-ref",
+                "--sort=-creatordate", "--format=\"%(refname:short)\"",
+                "refs/tags/" + tagPrefix + "*");
+
+        final List<String> result = new ArrayList<String>();
+        if (StringUtils.isNotBlank(tags)) {
+            // see gitFindBranches
+            tags = tags.replaceAll("\"", "");
+            for (String tag : tags.split("\\r?\\n")) {
+                if (StringUtils.isNotBlank(tag)) {
+                    result.add(tag.trim());
+                }
+            }
+        }
+        return result;
     }
 
     /**
-     * Executes git checkout -b.
+     * Gets index of the version tags. The tags are listed with a single git
+     * for-each-ref on the first call, the index is updated when tags are
+     * created by {@link #gitTag(String, String)}.
      * 
-     * @param newBranchName
-     *            Create branch with this name.
-     * @param fromBranchName
-     *            Create branch from this branch.
+     * @return Version tag index.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitCreateAndCheckout(final String newBranchName,
-            final String fromBranchName) throws MojoFailureException,
-            CommandLineException {
-        getLog().info(
-                "Creating a new branch '" + newBranchName + "' from '"
-                        + fromBranchName + "' and checking it out.");
+    protected VersionTagIndex getVersionTagIndex()
+            throws MojoFailureException, CommandLineException {
+        if (versionTagIndex == null) {
+            final String prefix = gitFlowConfig.getVersionTagPrefix();
 
-        executeGitCommand("checkout", "-b", newBranchName, fromBranchName);
+            // git for-each-ref --format="%(refname:short)" refs/tags/v*
+            String tags = executeGitCommandReturn("for-each-ref",
+                    "--format=\"%(refname:short)\"", "refs/tags/" + prefix
+                            + "*");
+
+            final List<String> names = new ArrayList<String>();
+            // see gitFindBranches
+            tags = tags.replaceAll("\"", "");
+            for (String tag : tags.split("\\r?\\n")) {
+                if (StringUtils.isNotBlank(tag)) {
+                    names.add(tag.trim());
+                }
+            }
+            versionTagIndex = new VersionTagIndex(prefix, names);
+        }
+        return versionTagIndex;
+    }
+
+    /**
+     * Checks that the tag of the version doesn't exist yet, so the goal fails
+     * before the merges and tests and not when the tag is created.
+     * 
+     * @param version
+     *            Project version to tag.
+     * @throws MojoFailureException
+     *             If the tag already exists.
+     * @throws CommandLineException
+     */
+    protected void checkVersionTagNotExists(final String version)
+            throws MojoFailureException, CommandLineException {
+        String tagVersion = version;
+        if (tychoBuild && ArtifactUtils.isSnapshot(version)) {
+            tagVersion = version.replace("-" + Artifact.SNAPSHOT_VERSION, "");
+        }
+
+        final VersionTagIndex index = getVersionTagIndex();
+        if (index.containsVersion(tagVersion)) {
+            throw new MojoFailureException("Tag '"
+                    + gitFlowConfig.getVersionTagPrefix() + tagVersion
+                    + "' already exists, the latest released version is '"
+                    + index.getLatestVersion() + "'.");
+        }
+    }
+
+    /**
+     * Lets the user choose one of the given branches. Branches are shown in
+     * pages of <code>branchPageSize</code> entries, the list can be filtered
+     * by typing a part of the branch name and a branch can be chosen by its
+     * number or full name.
+     * 
+     * @param title
+     *            Title of the branches list.
+     * @param branchPrefix
+     *            Prefix of the branches, used to resolve names given w/o it.
+     * @param branches
+     *            Branches to choose from.
+     * @param preselected
+     *            Branch name given w/o prompting, e.g. from a parameter. Can
+     *            be blank.
+     * @return Chosen branch name.
+     * @throws MojoFailureException
+     *             If preselected branch doesn't exist.
+     */
+    protected String promptBranchName(final String title,
+            final String branchPrefix, final List<String> branches,
+            final String preselected) throws MojoFailureException {
+        if (StringUtils.isNotBlank(preselected)) {
+            final String name = findBranchName(branchPrefix, branches,
+                    preselected.trim());
+            if (name == null) {
+                throw new MojoFailureException("Branch '" + preselected
+                        + "' doesn't exist.");
+            }
+            return name;
+        }
+
+        final int pageSize = branchPageSize > 0 ? branchPageSize : 20;
+
+        String filter = "";
+        List<String> filtered = branches;
+        int page = 0;
+        try {
+            while (true) {
+                final int pages = Math.max(1,
+                        (filtered.size() + pageSize - 1) / pageSize);
+                if (page >= pages) {
+                    page = pages - 1;
+                }
+                final int from = page * pageSize;
+                final int to = Math.min(filtered.size(), from + pageSize);
+
+                final StringBuilder str = new StringBuilder(title);
+                if (StringUtils.isNotEmpty(filter)) {
+                    str.append(" matching '").append(filter).append("'");
+                }
+                str.append(" (").append(filtered.size()).append(", page ")
+                        .append(page + 1).append("/").append(pages)
+                        .append("):").append(LS);
+                for (int i = from; i < to; i++) {
+                    str.append(i + 1).append(". ").append(filtered.get(i))
+                            .append(LS);
+                }
+                str.append("Choose number or name, type text to filter");
+                if (pages > 1) {
+                    str.append(", '>' next page, '<' previous page");
+                }
+                if (StringUtils.isNotEmpty(filter)) {
+                    str.append(", empty to clear filter");
+                }
+
+                String answer = prompter.prompt(str.toString());
+                answer = answer == null ? "" : answer.trim();
+
+                // exact branch name first, e.g. feature/1234 for 1234
+                final String exact = answer.length() == 0 ? null
+                        : findBranchName(branchPrefix, branches, answer);
+                if (exact != null) {
+                    return exact;
+                }
+
+                // number of the listed branch, longer numbers are filters
+                final int num = StringUtils.isNumeric(answer)
+                        && answer.length() > 0 && answer.length() < 10 ? Integer
+                        .parseInt(answer) : 0;
+                if (num >= 1 && num <= filtered.size()) {
+                    return filtered.get(num - 1);
+                } else if (">".equals(answer)) {
+                    page = Math.min(page + 1, pages - 1);
+                } else if ("<".equals(answer)) {
+                    page = Math.max(page - 1, 0);
+                } else if (answer.length() == 0) {
+                    filter = "";
+                    filtered = branches;
+                    page = 0;
+                } else {
+                    filter = answer;
+                    filtered = filterBranches(branches, filter);
+                    page = 0;
+                }
+            }
+        } catch (PrompterException e) {
+            getLog().error(e);
+        }
+        return null;
+    }
+
+    /**
+     * Finds branch by its full name or by its name w/o prefix.
+     * 
+     * @param branchPrefix
+     *            Prefix of the branches.
+     * @param branches
+     *            Branches to search in.
+     * @param name
+     *            Name to find.
+     * @return Branch name or <code>null</code> if not found.
+     */
+    private static String findBranchName(final String branchPrefix,
+            final List<String> branches, final String name) {
+        for (String branch : branches) {
+            if (branch.equals(name) || branch.equals(branchPrefix + name)) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Filters branches by case insensitive substring.
+     * 
+     * @param branches
+     *            Branches to filter.
+     * @param filter
+     *            Substring to look for.
+     * @return Matching branches in the original order.
+     */
+    private static List<String> filterBranches(final List<String> branches,
+            final String filter) {
+        final String lowerFilter = filter.toLowerCase();
+        final List<String> result = new ArrayList<String>();
+        for (String branch : branches) {
+            if (branch.toLowerCase().contains(lowerFilter)) {
+                result.add(branch);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if local branch with given name exists.
+     * 
+     * @param branchName
+     *            Name of the branch to check.
+     * @return <code>true</code> if local branch exists, <code>false</code>
+     *         otherwise.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean gitCheckBranchExists(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        CommandResult commandResult = executeGitCommandExitCode("show-ref",
+                "--verify", "--quiet", "refs/heads/" + branchName);
+        return commandResult.getExitCode() == SUCCESS_EXIT_CODE;
+    }
+
+    /**
+     * Checks if tag exists.
+     * 
+     * @param tagName
+     *            Tag name to check.
+     * @return <code>true</code> if tag exists, <code>false</code> otherwise.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean gitCheckTagExists(final String tagName)
+            throws MojoFailureException, CommandLineException {
+        CommandResult commandResult = executeGitCommandExitCode("show-ref",
+                "--verify", "--quiet", "refs/tags/" + tagName);
+        return commandResult.getExitCode() == SUCCESS_EXIT_CODE;
+    }
+
+    /**
+     * Executes git checkout.
+     * 
+     * @param branchName
+     *            Branch name to checkout.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCheckout(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        getLog().info("Checking out '" + branchName + "' branch.");
+
+        executeGitCommand("checkout", branchName);
+    }
+
+    /**
+     * Executes git checkout -b.
+     * 
+     * @param newBranchName
+     *            Create branch with this name.
+     * @param fromBranchName
+     *            Create branch from this branch.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCreateAndCheckout(final String newBranchName,
+            final String fromBranchName) throws MojoFailureException,
+            CommandLineException {
+        getLog().info(
+                "Creating a new branch '" + newBranchName + "' from '"
+                        + fromBranchName + "' and checking it out.");
+
+        executeGitCommand("checkout", "-b", newBranchName, fromBranchName);
+    }
+
+    /**
+     * Executes git branch.
+     * 
+     * @param newBranchName
+     *            Create branch with this name.
+     * @param fromBranchName
+     *            Create branch from this branch.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCreateBranch(final String newBranchName,
+            final String fromBranchName) throws MojoFailureException,
+            CommandLineException {
+        getLog().info(
+                "Creating a new branch '" + newBranchName + "' from '"
+                        + fromBranchName + "'.");
+
+        executeGitCommand("branch", newBranchName, fromBranchName);
+    }
+
+    /**
+     * Creates a new branch pointing to a new commit on top of the given
+     * branch which updates the project version in the POM files. The commit
+     * is written directly into the object database with git fast-import, the
+     * working tree and the index are not touched.
+     * <p>
+     * If the versions cannot be updated in the POM texts, e.g. the version is
+     * set with a property, the branch is checked out and versions are
+     * updated with Maven instead, so the branch is never created with the
+     * old version.
+     * </p>
+     * 
+     * @param newBranchName
+     *            Create branch with this name.
+     * @param fromBranchName
+     *            Create branch from this branch.
+     * @param version
+     *            New project version.
+     * @param message
+     *            Commit message.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCreateBranchWithVersion(final String newBranchName,
+            final String fromBranchName, final String version,
+            final String message) throws MojoFailureException,
+            CommandLineException {
+        getLog().info(
+                "Creating a new branch '" + newBranchName + "' from '"
+                        + fromBranchName + "' with version '" + version
+                        + "'.");
+
+        final String fromCommit = gitResolveCommit(fromBranchName);
+
+        final Map<String, String> poms = gitReadProjectPoms(fromCommit,
+                getProjectPathPrefix());
+        final String rootPom = poms.keySet().iterator().next();
+
+        final String oldVersion = PomVersionUpdater.getVersion(poms
+                .get(rootPom));
+        final PomVersionUpdater updater = new PomVersionUpdater(oldVersion,
+                version);
+        for (Map.Entry<String, String> pom : poms.entrySet()) {
+            updater.addPom(pom.getKey(), pom.getValue());
+        }
+        final Map<String, String> changed = updater.update();
+
+        if (oldVersion == null || oldVersion.contains("${")
+                || !changed.containsKey(rootPom)) {
+            getLog().info(
+                    "Cannot update versions w/o checking out the branch, using Maven.");
+
+            // check uncommitted changes
+            checkUncommittedChanges();
+
+            // git checkout -b release/... develop
+            gitCreateAndCheckout(newBranchName, fromBranchName);
+
+            // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
+            mvnSetVersions(version);
+
+            // git commit --only -m ...
+            gitCommitVersionFiles(message);
+            return;
+        }
+
+        final Map<String, String> modes = gitReadModes(fromCommit,
+                changed.keySet());
+        final String ident = executeGitCommandReturn("var",
+                "GIT_COMMITTER_IDENT").trim();
+
+        try {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            writeFastImportData(stream, "commit refs/heads/" + newBranchName
+                    + "\ncommitter " + ident + "\n", null);
+            writeFastImportData(stream, "data ",
+                    (message + "\n").getBytes("UTF-8"));
+            writeFastImportData(stream, "from " + fromCommit + "\n", null);
+            for (Map.Entry<String, String> file : changed.entrySet()) {
+                String mode = modes.get(file.getKey());
+                if (mode == null) {
+                    mode = "100644";
+                }
+                writeFastImportData(stream, "M " + mode + " inline "
+                        + quotePath(file.getKey()) + "\ndata ",
+                        encodeXml(file.getValue()));
+            }
+            writeFastImportData(stream, "done\n", null);
+
+            executeGitCommandRaw(stream.toByteArray(), "fast-import",
+                    "--quiet", "--done");
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot create commit.", e);
+        }
+    }
+
+    /**
+     * Quotes path as C-style string for git fast-import, so paths with
+     * spaces, quotes or control characters are read correctly.
+     * 
+     * @param path
+     *            Path.
+     * @return Quoted path.
+     */
+    private static String quotePath(final String path) {
+        final StringBuilder sb = new StringBuilder(path.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < 0x20 || c == 0x7f) {
+                sb.append(String.format("\\%03o", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Gets path of the project directory relative to the working tree root.
+     * 
+     * @return Path prefix ending with slash or empty string.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected String getProjectPathPrefix() throws MojoFailureException,
+            CommandLineException {
+        if (projectPathPrefix != null) {
+            return projectPathPrefix;
+        }
+
+        final String topLevel = getRepository().getTopLevel();
+        try {
+            final String root = new File(topLevel).getCanonicalPath();
+            final String dir = project.getBasedir().getCanonicalPath();
+            if (!dir.startsWith(root)) {
+                throw new MojoFailureException("Project directory '" + dir
+                        + "' is not in the working tree '" + root + "'.");
+            }
+            String prefix = dir.substring(root.length()).replace('\\', '/');
+            while (prefix.startsWith("/")) {
+                prefix = prefix.substring(1);
+            }
+            projectPathPrefix = prefix.length() == 0 ? "" : prefix + "/";
+            return projectPathPrefix;
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot get project directory.", e);
+        }
+    }
+
+    /**
+     * Reads POM files of the project and its modules from the given
+     * revision. Modules are read level by level, one git cat-file --batch
+     * per level.
+     * 
+     * @param revision
+     *            Revision to read files from.
+     * @param prefix
+     *            Path of the project directory in the repository.
+     * @return POM contents by path, root POM first.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected Map<String, String> gitReadProjectPoms(final String revision,
+            final String prefix) throws MojoFailureException,
+            CommandLineException {
+        final Map<String, String> poms = new LinkedHashMap<String, String>();
+
+        List<String> level = new ArrayList<String>();
+        level.add(prefix + "pom.xml");
+        while (!level.isEmpty()) {
+            final Map<String, byte[]> files = gitReadFiles(revision, level);
+            final List<String> next = new ArrayList<String>();
+            for (String path : level) {
+                final byte[] data = files.get(path);
+                if (data == null) {
+                    if (poms.isEmpty()) {
+                        throw new MojoFailureException("Cannot read '" + path
+                                + "' from '" + revision + "'.");
+                    }
+                    continue;
+                }
+                final String content = decodeXml(data);
+                poms.put(path, content);
+
+                final String dir = path.substring(0,
+                        path.lastIndexOf('/') + 1);
+                for (String module : PomVersionUpdater.getModules(content)) {
+                    String modulePath = normalizePath(dir + module);
+                    if (!modulePath.endsWith(".xml")) {
+                        modulePath += "/pom.xml";
+                    }
+                    if (!poms.containsKey(modulePath)
+                            && !next.contains(modulePath)) {
+                        next.add(modulePath);
+                    }
+                }
+            }
+            level = next;
+        }
+        return poms;
+    }
+
+    /**
+     * Reads files from the given revision with single git cat-file --batch.
+     * 
+     * @param revision
+     *            Revision to read files from.
+     * @param paths
+     *            Paths of the files relative to the repository root.
+     * @return File contents by path, missing files are not included.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected Map<String, byte[]> gitReadFiles(final String revision,
+            final Collection<String> paths) throws MojoFailureException,
+            CommandLineException {
+        final StringBuilder input = new StringBuilder();
+        for (String path : paths) {
+            input.append(revision).append(':').append(path).append('\n');
+        }
+
+        final byte[] out;
+        try {
+            out = executeGitCommandRaw(input.toString().getBytes("UTF-8"),
+                    "cat-file", "--batch");
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot read files.", e);
+        }
+
+        // <sha> <type> <size>LF<contents>LF or <object> missing LF
+        final Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+        int pos = 0;
+        for (String path : paths) {
+            int eol = pos;
+            while (eol < out.length && out[eol] != '\n') {
+                eol++;
+            }
+            final String header = new String(out, pos, eol - pos);
+            pos = eol + 1;
+            final String[] parts = header.split(" ");
+            if (parts.length == 3 && !"missing".equals(parts[2])) {
+                final int size = Integer.parseInt(parts[2]);
+                if ("blob".equals(parts[1])) {
+                    final byte[] data = new byte[size];
+                    System.arraycopy(out, pos, data, 0, size);
+                    files.put(path, data);
+                }
+                pos += size + 1;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Reads file modes from the given revision with git ls-tree.
+     * 
+     * @param revision
+     *            Revision to read modes from.
+     * @param paths
+     *            Paths of the files relative to the repository root.
+     * @return Modes by path.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private Map<String, String> gitReadModes(final String revision,
+            final Collection<String> paths) throws MojoFailureException,
+            CommandLineException {
+        final List<String> args = new ArrayList<String>();
+        args.add("ls-tree");
+        args.add("-z");
+        args.add("--full-tree");
+        args.add(revision);
+        args.add("--");
+        args.addAll(paths);
+
+        final Map<String, String> modes = new LinkedHashMap<String, String>();
+        try {
+            final String out = new String(executeGitCommandRaw(null,
+                    args.toArray(new String[args.size()])), "UTF-8");
+            // <mode> SP <type> SP <object> TAB <file> NUL
+            for (String entry : out.split("\0")) {
+                final int tab = entry.indexOf('\t');
+                if (tab > 0) {
+                    modes.put(entry.substring(tab + 1),
+                            entry.substring(0, entry.indexOf(' ')));
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot read file modes.", e);
+        }
+        return modes;
+    }
+
+    private static void writeFastImportData(final OutputStream stream,
+            final String command, final byte[] data) throws IOException {
+        stream.write(command.getBytes("UTF-8"));
+        if (data != null) {
+            stream.write((data.length + "\n").getBytes("UTF-8"));
+            stream.write(data);
+            stream.write('\n');
+        }
+    }
+
+    private static String normalizePath(final String path) {
+        final List<String> parts = new ArrayList<String>();
+        for (String part : path.split("/")) {
+            if ("..".equals(part) && !parts.isEmpty()) {
+                parts.remove(parts.size() - 1);
+            } else if (part.length() > 0 && !".".equals(part)) {
+                parts.add(part);
+            }
+        }
+        return StringUtils.join(parts.iterator(), "/");
+    }
+
+    /**
+     * Decodes XML file using encoding from its prolog, UTF-8 by default.
+     * 
+     * @param data
+     *            File content.
+     * @return Decoded content.
+     * @throws MojoFailureException
+     */
+    protected static String decodeXml(final byte[] data)
+            throws MojoFailureException {
+        try {
+            final String ascii = new String(data, 0, Math.min(data.length,
+                    200), "ISO-8859-1");
+            final Matcher m = XML_ENCODING.matcher(ascii);
+            return new String(data, m.find() ? m.group(1) : "UTF-8");
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot decode XML file.", e);
+        }
+    }
+
+    /**
+     * Encodes XML file using encoding from its prolog, UTF-8 by default.
+     * 
+     * @param content
+     *            File content.
+     * @return Encoded content.
+     * @throws MojoFailureException
+     */
+    protected static byte[] encodeXml(final String content)
+            throws MojoFailureException {
+        try {
+            final Matcher m = XML_ENCODING.matcher(content);
+            return content.getBytes(m.find() ? m.group(1) : "UTF-8");
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot encode XML file.", e);
+        }
+    }
+
+    /**
+     * Executes git rev-parse --verify to get object name of the commit.
+     * 
+     * @param revision
+     *            Revision, e.g. branch name.
+     * @return Object name of the commit.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected String gitResolveCommit(final String revision)
+            throws MojoFailureException, CommandLineException {
+        return executeGitCommandReturn("rev-parse", "--verify",
+                revision + "^{commit}").trim();
+    }
+
+    /**
+     * Executes git merge-base to get the best common ancestor of the commits.
+     * 
+     * @param revision
+     *            Revision, e.g. branch name.
+     * @param otherRevision
+     *            Other revision.
+     * @return Object name of the common ancestor or <code>null</code> if the
+     *         commits have no common ancestor.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected String gitMergeBase(final String revision,
+            final String otherRevision) throws MojoFailureException,
+            CommandLineException {
+        final CommandResult result = executeGitCommandExitCode("merge-base",
+                revision, otherRevision);
+        return result.getExitCode() == SUCCESS_EXIT_CODE ? result.getOut()
+                .trim() : null;
+    }
+
+    /**
+     * Executes git merge-base --is-ancestor.
+     * 
+     * @param ancestor
+     *            Possible ancestor commit.
+     * @param revision
+     *            Revision, e.g. branch name.
+     * @return <code>true</code> if the revision contains the ancestor commit.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean gitIsAncestor(final String ancestor,
+            final String revision) throws MojoFailureException,
+            CommandLineException {
+        final CommandResult result = executeGitCommandExitCode("merge-base",
+                "--is-ancestor", ancestor, revision);
+        return result.getExitCode() == SUCCESS_EXIT_CODE;
+    }
+
+    /**
+     * Executes git reset --hard. Also discards unfinished merge.
+     * 
+     * @param revision
+     *            Revision to reset the current branch to.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitResetHard(final String revision)
+            throws MojoFailureException, CommandLineException {
+        getLog().info("Resetting current branch to '" + revision + "'.");
+
+        executeGitCommand("reset", "--hard", revision);
     }
 
     /**
      * Executes git commit -a -m.
      * 
-     * @param message
-     *            Commit message.
+     * @param message
+     *            Commit message.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCommit(final String message) throws MojoFailureException,
+            CommandLineException {
+        getLog().info("Committing changes.");
+
+        executeGitCommand("commit", "-a", "-m", message);
+    }
+
+    /**
+     * Commits files changed by {@link #mvnSetVersions(String)}. Executes git
+     * commit --only -m with the paths of the modified tracked project POM
+     * files (and Tycho metadata files), so git doesn't have to scan the whole
+     * working tree. Other modified POM and manifest files of the working tree,
+     * e.g. of an aggregator above the project, are committed too. If
+     * <code>gitCommitAll</code> is set executes git commit -a -m.
+     * 
+     * @param message
+     *            Commit message.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCommitVersionFiles(final String message)
+            throws MojoFailureException, CommandLineException {
+        if (gitCommitAll) {
+            gitCommit(message);
+            return;
+        }
+
+        getLog().info("Committing version changes.");
+
+        final List<String> paths = gitListModified(getVersionFiles());
+        // files changed by versions:set outside of the collected modules
+        for (String path : gitListModified(":(top,glob)**/*.xml",
+                ":(top,glob)**/MANIFEST.MF")) {
+            if (!paths.contains(path)) {
+                getLog().info(
+                        "Committing version changes outside of the project: "
+                                + path);
+                paths.add(path);
+            }
+        }
+        if (paths.isEmpty()) {
+            getLog().info("No version changes to commit.");
+            return;
+        }
+
+        final List<String> args = new ArrayList<String>();
+        args.add("commit");
+        args.add("--only");
+        args.add("-m");
+        args.add(message);
+        args.add("--");
+        args.addAll(paths);
+
+        executeGitCommand(args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Gets the files which are tracked and modified in the working tree.
+     * Untracked, ignored and outside of the working tree files are left out,
+     * git commit --only fails on them.
+     * 
+     * @param files
+     *            Files to check.
+     * @return Absolute paths of the modified files.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private List<String> gitListModified(final List<File> files)
+            throws MojoFailureException, CommandLineException {
+        final List<String> paths = new ArrayList<String>();
+        try {
+            final String prefix = new File(getRepository().getTopLevel())
+                    .getCanonicalPath() + File.separator;
+            for (File file : files) {
+                final String path = file.getCanonicalPath();
+                if (path.startsWith(prefix)) {
+                    paths.add(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot get project files.", e);
+        }
+        if (paths.isEmpty()) {
+            return paths;
+        }
+
+        return gitListModified(paths.toArray(new String[paths.size()]));
+    }
+
+    /**
+     * Gets the tracked files matching the pathspecs which are modified in the
+     * working tree.
+     * 
+     * @param pathspecs
+     *            Pathspecs to check.
+     * @return Absolute paths of the modified files.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private List<String> gitListModified(final String... pathspecs)
+            throws MojoFailureException, CommandLineException {
+        final File root;
+        try {
+            root = new File(getRepository().getTopLevel()).getCanonicalFile();
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot get project files.", e);
+        }
+
+        final List<String> args = new ArrayList<String>();
+        args.add("ls-files");
+        args.add("-m");
+        args.add("-z");
+        args.add("--full-name");
+        args.add("--");
+        args.addAll(Arrays.asList(pathspecs));
+
+        final List<String> modified = new ArrayList<String>();
+        try {
+            // git ls-files -m -z --full-name -- <pathspecs>
+            final String out = new String(executeGitCommandRaw(null,
+                    args.toArray(new String[args.size()])), "UTF-8");
+            for (String name : out.split("\0")) {
+                if (name.length() > 0) {
+                    final String path = new File(root, name).getPath();
+                    if (!modified.contains(path)) {
+                        modified.add(path);
+                    }
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new MojoFailureException("Cannot list modified files.", e);
+        }
+        return modified;
+    }
+
+    /**
+     * Gets files which can be changed by setting project version.
+     * 
+     * @return Version files of the project and its modules.
+     * @throws MojoFailureException
+     */
+    protected List<File> getVersionFiles() throws MojoFailureException {
+        try {
+            return ProjectVersionFiles.collect(project.getFile(), tychoBuild);
+        } catch (Exception e) {
+            throw new MojoFailureException("Cannot read project modules.", e);
+        }
+    }
+
+    /**
+     * Executes git rebase or git merge --no-ff or git merge.
+     * 
+     * @param branchName
+     *            Branch name to merge.
+     * @param rebase
+     *            Do rebase.
+     * @param noff
+     *            Merge with --no-ff.
+     * @param ffonly
+     *            Merge with --ff-only.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitMerge(final String branchName, boolean rebase,
+            boolean noff, boolean ffonly) throws MojoFailureException,
+            CommandLineException {
+        if (rebase) {
+            getLog().info("Rebasing '" + branchName + "' branch.");
+            executeGitCommand("rebase", branchName);
+        } else if (ffonly) {
+            getLog().info("Merging (--ff-only) '" + branchName + "' branch.");
+            executeGitCommand("merge", "--ff-only", branchName);
+        } else if (noff) {
+            getLog().info("Merging (--no-ff) '" + branchName + "' branch.");
+            executeGitCommand("merge", "--no-ff", branchName);
+        } else {
+            getLog().info("Merging '" + branchName + "' branch.");
+            executeGitCommand("merge", branchName);
+        }
+    }
+
+    /**
+     * Executes git merge --no-ff.
+     * 
+     * @param branchName
+     *            Branch name to merge.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitMergeNoff(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        gitMerge(branchName, false, true, false);
+    }
+
+    /**
+     * Executes git merge --no-ff -m, e.g. to keep the usual merge message on
+     * a detached <code>HEAD</code>.
+     * 
+     * @param branchName
+     *            Branch name to merge.
+     * @param message
+     *            Merge commit message.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitMergeNoff(final String branchName, final String message)
+            throws MojoFailureException, CommandLineException {
+        getLog().info("Merging (--no-ff) '" + branchName + "' branch.");
+
+        // not through the shell, so the quotes of the message are kept
+        executeGitCommandRaw(null, "merge", "--no-ff", "-m", message,
+                branchName);
+    }
+
+    /**
+     * Executes git merge --squash.
+     * 
+     * @param branchName
+     *            Branch name to merge.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitMergeSquash(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        getLog().info("Squashing '" + branchName + "' branch.");
+        executeGitCommand("merge", "--squash", branchName);
+    }
+
+    /**
+     * Squashes the branch into the current branch w/o touching the working
+     * tree during the merge. The merged tree is computed with git merge-tree
+     * --write-tree, committed with git commit-tree and the current branch is
+     * fast-forwarded to the new commit, so only the changed files are
+     * updated once. Commit hooks are not run.
+     * 
+     * @param branchName
+     *            Branch name to squash.
+     * @param message
+     *            Commit message.
+     * @return <code>true</code> if the squash commit was created,
+     *         <code>false</code> if the branches have conflicts or Git is
+     *         older than 2.38 and nothing was changed.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean gitMergeSquashDirect(final String branchName,
+            final String message) throws MojoFailureException,
+            CommandLineException {
+        getLog().info("Squashing '" + branchName + "' branch (direct).");
+
+        final String head = gitResolveCommit("HEAD");
+
+        // git merge-tree --write-tree HEAD feature/...
+        final CommandResult result = executeGitCommandExitCode("merge-tree",
+                "--write-tree", "--no-messages", head, branchName);
+        if (result.getExitCode() != SUCCESS_EXIT_CODE) {
+            getLog().info(
+                    "Cannot squash '" + branchName
+                            + "' branch directly, using the working tree.");
+            return false;
+        }
+        final String tree = result.getOut().split("\\r?\\n")[0].trim();
+
+        // git commit-tree <tree> -p HEAD -m ...
+        final String commit = executeGitCommandReturn("commit-tree", tree,
+                "-p", head, "-m", message).trim();
+
+        // git merge --ff-only <commit>
+        executeGitCommand("merge", "--ff-only", "--quiet", commit);
+        return true;
+    }
+
+    /**
+     * Merges the branch into each of the target branches in memory, executing
+     * git merge-tree for all targets concurrently, and fails listing the
+     * conflicting paths of all targets. Neither the working tree nor the
+     * references are changed.
+     * 
+     * @param branchName
+     *            Branch to merge.
+     * @param targets
+     *            Target branches.
+     * @return Merge results by target branch. Empty if the check is disabled
+     *         or Git is older than 2.38.
+     * @throws MojoFailureException
+     *             If the branch conflicts with any of the targets.
+     * @throws CommandLineException
+     */
+    protected Map<String, TrialMerge> gitTrialMerge(final String branchName,
+            final List<String> targets) throws MojoFailureException,
+            CommandLineException {
+        final Map<String, TrialMerge> merges = new LinkedHashMap<String, TrialMerge>();
+        if (!mergeConflictCheck || targets.isEmpty()) {
+            return merges;
+        }
+
+        // initialize executables
+        initExecutables();
+
+        getLog().info(
+                "Checking merge of '" + branchName + "' branch into "
+                        + StringUtils.join(targets.iterator(), ", ") + ".");
+
+        // the commits the trees are computed for, the merge commits are
+        // written for them even if the branches move meanwhile
+        final String branchCommit = gitResolveCommit(branchName);
+        final List<String> targetCommits = new ArrayList<String>();
+        for (String target : targets) {
+            targetCommits.add(gitResolveCommit(target));
+        }
+
+        final List<Callable<CommandResult>> tasks = new ArrayList<Callable<CommandResult>>();
+        for (String targetCommit : targetCommits) {
+            // git merge-tree --write-tree --name-only develop hotfix/...
+            final String[] command = { cmdGit.getExecutable(), "merge-tree",
+                    "--write-tree", "--name-only", "--no-messages",
+                    targetCommit, branchCommit };
+            final CommandRunner runner = new CommandRunner(command,
+                    getWorkingDirectory());
+            runner.setTimeout(gitTimeout);
+            tasks.add(new Callable<CommandResult>() {
+                @Override
+                public CommandResult call() throws Exception {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final ByteArrayOutputStream err = new ByteArrayOutputStream();
+                    final int exitCode = runner.run(out, err);
+                    return new CommandResult(runner.isTimedOut() ? -1
+                            : exitCode, out.toString("UTF-8"), err.toString());
+                }
+            });
+        }
+
+        final List<CommandResult> results = new ArrayList<CommandResult>();
+        final ExecutorService executor = Executors.newFixedThreadPool(tasks
+                .size());
+        try {
+            for (Future<CommandResult> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new CommandLineException(e.getCause().getMessage(),
+                    e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final StringBuilder conflicts = new StringBuilder();
+        for (int i = 0; i < targets.size(); i++) {
+            final CommandResult result = results.get(i);
+            final String[] lines = result.getOut().split("\\r?\\n");
+            if (result.getExitCode() == SUCCESS_EXIT_CODE) {
+                merges.put(targets.get(i), new TrialMerge(lines[0].trim(),
+                        targetCommits.get(i), branchCommit));
+            } else if (result.getExitCode() == 1) {
+                conflicts.append(LS).append(targets.get(i)).append(':');
+                // tree, conflicting paths, empty line
+                for (int j = 1; j < lines.length; j++) {
+                    if (lines[j].length() == 0) {
+                        break;
+                    }
+                    conflicts.append(LS).append("    ").append(lines[j]);
+                }
+            } else {
+                getLog().info(
+                        "Cannot check merge conflicts, Git 2.38 or newer is required.");
+                if (getLog().isDebugEnabled()) {
+                    getLog().debug(result.getError());
+                }
+                return new LinkedHashMap<String, TrialMerge>();
+            }
+        }
+
+        if (conflicts.length() > 0) {
+            throw new MojoFailureException("Branch '" + branchName
+                    + "' has merge conflicts with:" + conflicts);
+        }
+        return merges;
+    }
+
+    /**
+     * Merges the branch into the target branch w/o checking it out. Writes
+     * the merge commit of the tree from {@link #gitTrialMerge(String, List)}
+     * with git commit-tree and moves the target branch to it, like git merge
+     * --no-ff would do in the working tree. Nothing is done if any of the
+     * branches was changed since the trial merge, the tree doesn't match
+     * them anymore.
+     * 
+     * @param targetBranch
+     *            Branch to merge into, must not be checked out.
+     * @param branchName
+     *            Branch to merge.
+     * @param merge
+     *            Result of the trial merge.
+     * @return <code>true</code> if merged, <code>false</code> if the branches
+     *         were changed and have to be merged in the working tree.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected boolean gitMergeDirect(final String targetBranch,
+            final String branchName, final TrialMerge merge)
+            throws MojoFailureException, CommandLineException {
+        if (!merge.getTarget().equals(gitResolveCommit(targetBranch))
+                || !merge.getBranch().equals(gitResolveCommit(branchName))) {
+            getLog().info(
+                    "Branches were changed since the merge check, cannot merge '"
+                            + branchName + "' into '" + targetBranch
+                            + "' directly.");
+            return false;
+        }
+
+        getLog().info(
+                "Merging '" + branchName + "' branch into '" + targetBranch
+                        + "' (direct).");
+
+        // git commit-tree <tree> -p support/... -p hotfix/... -m ...
+        // not through the shell, so the quotes of the message are kept
+        final String commit;
+        try {
+            commit = new String(executeGitCommandRaw(null, "commit-tree",
+                    merge.getTree(), "-p", merge.getTarget(), "-p",
+                    merge.getBranch(), "-m", "Merge branch '" + branchName
+                            + "' into " + targetBranch), "UTF-8").trim();
+        } catch (UnsupportedEncodingException e) {
+            throw new MojoFailureException("Cannot decode commit.", e);
+        }
+
+        // fails if the branch was moved meanwhile
+        // git update-ref refs/heads/support/... <commit> <old>
+        executeGitCommand("update-ref", "refs/heads/" + targetBranch, commit,
+                merge.getTarget());
+        return true;
+    }
+
+    /**
+     * Executes git tag -a -m.
+     * 
+     * @param tagName
+     *            Name of the tag.
+     * @param message
+     *            Tag message.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitTag(final String tagName, final String message)
+            throws MojoFailureException, CommandLineException {
+        if (refTransaction != null) {
+            getLog().info("Creating '" + tagName + "' tag (deferred).");
+
+            final String target = executeGitCommandReturn("rev-parse",
+                    "--verify", "HEAD").trim();
+            refTransaction.addTag(tagName, target, message);
+            if (versionTagIndex != null) {
+                versionTagIndex.add(tagName);
+            }
+            return;
+        }
+
+        getLog().info("Creating '" + tagName + "' tag.");
+
+        executeGitCommand("tag", "-a", tagName, "-m", message);
+        if (versionTagIndex != null) {
+            versionTagIndex.add(tagName);
+        }
+    }
+
+    /**
+     * Executes git branch -d.
+     * 
+     * @param branchName
+     *            Branch name to delete.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitBranchDelete(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        if (refTransaction != null) {
+            getLog().info("Deleting '" + branchName + "' branch (deferred).");
+            refTransaction.addBranchDelete(branchName, false);
+            return;
+        }
+
+        getLog().info("Deleting '" + branchName + "' branch.");
+
+        executeGitCommand("branch", "-d", branchName);
+    }
+
+    /**
+     * Executes git branch -D.
+     * 
+     * @param branchName
+     *            Branch name to delete.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitBranchDeleteForce(final String branchName)
+            throws MojoFailureException, CommandLineException {
+        if (refTransaction != null) {
+            getLog().info(
+                    "Deleting (-D) '" + branchName + "' branch (deferred).");
+            refTransaction.addBranchDelete(branchName, true);
+            return;
+        }
+
+        getLog().info("Deleting (-D) '" + branchName + "' branch.");
+
+        executeGitCommand("branch", "-D", branchName);
+    }
+
+    /**
+     * Starts collecting tag creations and branch deletions if
+     * <code>atomicRefUpdates</code> is enabled. Collected changes are applied
+     * by {@link #gitCommitRefTransaction()}. Tag objects of the transaction
+     * are not signed, so fails if Git is configured to sign tags.
+     * 
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitStartRefTransaction() throws MojoFailureException,
+            CommandLineException {
+        if (atomicRefUpdates) {
+            for (String name : new String[] { "tag.gpgSign",
+                    "tag.forceSignAnnotated" }) {
+                // git config --bool tag.gpgSign
+                final CommandResult r = executeGitCommandExitCode("config",
+                        "--bool", name);
+                if (r.getExitCode() == SUCCESS_EXIT_CODE
+                        && "true".equals(r.getOut().trim())) {
+                    throw new MojoFailureException("Signed tags ('" + name
+                            + "') cannot be created with atomicRefUpdates.");
+                }
+            }
+            refTransaction = new GitRefTransaction();
+        }
+    }
+
+    /**
+     * Applies collected reference changes in a single
+     * <code>git update-ref --stdin</code> transaction. Either all changes are
+     * applied or none.
+     * 
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected void gitCommitRefTransaction() throws MojoFailureException,
+            CommandLineException {
+        final GitRefTransaction transaction = refTransaction;
+        refTransaction = null;
+
+        if (transaction == null || transaction.isEmpty()) {
+            return;
+        }
+
+        getLog().info("Updating references.");
+
+        if (!transaction.getTags().isEmpty()) {
+            final String ident = executeGitCommandReturn("var",
+                    "GIT_COMMITTER_IDENT").trim();
+            try {
+                for (GitRefTransaction.Tag tag : transaction.getTags()) {
+                    // same message cleanup as git tag does
+                    // git stripspace --strip-comments
+                    final String message = new String(executeGitCommandRaw(
+                            tag.getMessage().getBytes("UTF-8"), "stripspace",
+                            "--strip-comments"), "UTF-8");
+                    final String tagObject = "object " + tag.getTarget()
+                            + "\ntype commit\ntag " + tag.getName()
+                            + "\ntagger " + ident + "\n\n" + message;
+                    // git mktag
+                    final String sha = new String(executeGitCommandRaw(
+                            tagObject.getBytes("UTF-8"), "mktag"), "UTF-8")
+                            .trim();
+                    transaction.create("refs/tags/" + tag.getName(), sha);
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new MojoFailureException("Cannot create tag.", e);
+            }
+        }
+
+        resolveBranchDeletes(transaction, transaction.getDeletes(), true);
+        resolveBranchDeletes(transaction, transaction.getForceDeletes(),
+                false);
+
+        executeCommand(cmdGit, true, transaction.getUpdates(), "update-ref",
+                "--stdin");
+    }
+
+    /**
+     * Adds <code>delete</code> instructions with the current object names of
+     * the branches, checking that they are not checked out and, optionally,
+     * merged into <code>HEAD</code>. Uses single git for-each-ref.
+     * 
+     * @param transaction
+     *            Transaction to add instructions to.
+     * @param branches
+     *            Branches to delete.
+     * @param merged
+     *            Whether branches must be merged into <code>HEAD</code>.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private void resolveBranchDeletes(final GitRefTransaction transaction,
+            final List<String> branches, final boolean merged)
+            throws MojoFailureException, CommandLineException {
+        if (branches.isEmpty()) {
+            return;
+        }
+
+        final List<String> args = new ArrayList<String>();
+        args.add("for-each-ref");
+        args.add("--format=\"%(objectname) %(refname) %(HEAD)\"");
+        if (merged) {
+            args.add("--merged=HEAD");
+        }
+        for (String branch : branches) {
+            args.add("refs/heads/" + branch);
+        }
+
+        final String refs = executeGitCommandReturn(
+                args.toArray(new String[args.size()])).replaceAll("\"", "");
+
+        for (String branch : branches) {
+            final String ref = "refs/heads/" + branch;
+            String sha = null;
+            for (String line : refs.split("\\r?\\n")) {
+                final String[] parts = line.trim().split(" ");
+                if (parts.length > 1 && ref.equals(parts[1])) {
+                    if (parts.length > 2 && "*".equals(parts[2])) {
+                        throw new MojoFailureException("Cannot delete branch '"
+                                + branch + "' which is checked out.");
+                    }
+                    sha = parts[0];
+                }
+            }
+            if (sha == null) {
+                throw new MojoFailureException("The branch '" + branch
+                        + "' doesn't exist"
+                        + (merged ? " or is not fully merged." : "."));
+            }
+            transaction.delete(ref, sha);
+        }
+    }
+
+    /**
+     * Opens journal of the goal execution in <code>.git/gitflow</code>
+     * directory. When resuming, the journal of the failed execution is
+     * loaded and the references changed by its completed steps are checked
+     * to be unchanged since then.
+     * 
+     * @param goal
+     *            Goal name.
+     * @param resume
+     *            Whether to resume failed execution.
+     * @return Journal, resumed if the journal of the failed execution
+     *         exists.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    protected GitFlowJournal gitOpenJournal(final String goal,
+            final boolean resume) throws MojoFailureException,
+            CommandLineException {
+        final GitFlowJournal journal = new GitFlowJournal(new File(
+                getGitDir(), "gitflow/" + goal + ".journal"));
+        if (!resume) {
+            return journal;
+        }
+
+        try {
+            if (!journal.load()) {
+                getLog().info(
+                        "There is no failed '" + goal
+                                + "' execution to resume.");
+                return journal;
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot read journal.", e);
+        }
+
+        for (Map.Entry<String, String> ref : journal.getRefs().entrySet()) {
+            // git rev-parse --verify --quiet <ref>^{commit}
+            final CommandResult result = executeGitCommandExitCode(
+                    "rev-parse", "--verify", "--quiet", ref.getKey()
+                            + "^{commit}");
+            final String current = result.getExitCode() == SUCCESS_EXIT_CODE ? result
+                    .getOut().trim() : null;
+            if (ref.getValue() == null ? current != null : !ref.getValue()
+                    .equals(current)) {
+                throw new MojoFailureException("'" + ref.getKey()
+                        + "' has changed since the failed '" + goal
+                        + "' execution, cannot resume it.");
+            }
+        }
+
+        getLog().info(
+                "Resuming '" + goal + "' of '" + journal.getBranch()
+                        + "', completed steps: "
+                        + StringUtils.join(journal.getSteps().iterator(), ", ")
+                        + ".");
+        return journal;
+    }
+
+    /**
+     * Starts new journal of the goal execution.
+     * 
+     * @param journal
+     *            Journal.
+     * @param branchName
+     *            Branch the goal is executed for.
+     * @throws MojoFailureException
+     */
+    protected void startJournal(final GitFlowJournal journal,
+            final String branchName) throws MojoFailureException {
+        try {
+            journal.start(branchName);
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot write journal.", e);
+        }
+    }
+
+    /**
+     * Records completed step in the journal with the resulting object name
+     * of the branch.
+     * 
+     * @param journal
+     *            Journal.
+     * @param step
+     *            Step name.
+     * @param branchName
+     *            Branch changed by the step, <code>null</code> if no branch
+     *            is changed.
+     * @param deleted
+     *            Whether the branch was deleted.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitCommit(final String message) throws MojoFailureException,
-            CommandLineException {
-        getLog().info("Committing changes.");
+    protected void gitJournalStep(final GitFlowJournal journal,
+            final String step, final String branchName, final boolean deleted)
+            throws MojoFailureException, CommandLineException {
+        try {
+            if (branchName == null) {
+                journal.done(step);
+            } else {
+                journal.done(step, "refs/heads/" + branchName,
+                        deleted ? null : gitResolveCommit(branchName));
+            }
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot write journal.", e);
+        }
+    }
 
-        executeGitCommand("commit", "-a", "-m", message);
+    /**
+     * Logs how to resume the failed execution if it has completed steps.
+     * 
+     * @param journal
+     *            Journal of the execution, can be <code>null</code>.
+     */
+    protected void logResumeHint(final GitFlowJournal journal) {
+        if (journal != null && !journal.getSteps().isEmpty()) {
+            getLog().info(
+                    "Completed steps are recorded: "
+                            + StringUtils.join(journal.getSteps().iterator(),
+                                    ", ")
+                            + ". Execute the goal with -Dresume=true to continue.");
+        }
     }
 
     /**
-     * Executes git rebase or git merge --no-ff or git merge.
+     * Starts writing the changelog of the commits since the previous version
+     * tag in background if <code>changelogFile</code> is set. The commits are
+     * streamed from git log, so the next steps of the goal, e.g. install and
+     * push, are executed while the changelog is written.
      * 
-     * @param branchName
-     *            Branch name to merge.
-     * @param rebase
-     *            Do rebase.
-     * @param noff
-     *            Merge with --no-ff.
-     * @param ffonly
-     *            Merge with --ff-only.
+     * @param version
+     *            Version the changelog is written for.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitMerge(final String branchName, boolean rebase,
-            boolean noff, boolean ffonly) throws MojoFailureException,
-            CommandLineException {
-        if (rebase) {
-            getLog().info("Rebasing '" + branchName + "' branch.");
-            executeGitCommand("rebase", branchName);
-        } else if (ffonly) {
-            getLog().info("Merging (--ff-only) '" + branchName + "' branch.");
-            executeGitCommand("merge", "--ff-only", branchName);
-        } else if (noff) {
-            getLog().info("Merging (--no-ff) '" + branchName + "' branch.");
-            executeGitCommand("merge", "--no-ff", branchName);
-        } else {
-            getLog().info("Merging '" + branchName + "' branch.");
-            executeGitCommand("merge", branchName);
+    protected void startChangelog(final String version)
+            throws MojoFailureException, CommandLineException {
+        if (changelogFile == null) {
+            return;
+        }
+
+        getLog().info(
+                "Writing changelog of '" + version + "' to '" + changelogFile
+                        + "'.");
+
+        final String commit = gitResolveCommit("HEAD");
+
+        // git describe --tags --abbrev=0 --match v* <commit>^
+        final CommandResult describe = executeGitCommandExitCode("describe",
+                "--tags", "--abbrev=0",
+                "--match=" + gitFlowConfig.getVersionTagPrefix() + "*",
+                commit + "^");
+        final String previousTag = describe.getExitCode() == SUCCESS_EXIT_CODE ? describe
+                .getOut().trim() : null;
+
+        // topological order, so the commits merged by feature and hotfix
+        // merges are known when they are reached
+        final String[] command = { cmdGit.getExecutable(), "log",
+                "--topo-order", "--format=%H%x09%P%x09%h%x09%s",
+                previousTag == null ? commit : previousTag + ".." + commit };
+        final CommandRunner runner = new CommandRunner(command,
+                getWorkingDirectory());
+        runner.setTimeout(gitTimeout);
+
+        changelog = new FutureTask<File>(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                final GitFlowChangelog writer = new GitFlowChangelog(
+                        changelogFile, version, previousTag, gitFlowConfig
+                                .getFeatureBranchPrefix(), gitFlowConfig
+                                .getHotfixBranchPrefix());
+                final ByteArrayOutputStream err = new ByteArrayOutputStream();
+                final int exitCode;
+                try {
+                    exitCode = runner.run(
+                            new CommandRunner.LineOutputStream(writer), err);
+                } finally {
+                    writer.close();
+                }
+                if (exitCode != SUCCESS_EXIT_CODE) {
+                    throw new IOException(err.toString());
+                }
+                return writer.getFile();
+            }
+        });
+        final Thread thread = new Thread(changelog, "gitflow-changelog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for the changelog started by {@link #startChangelog(String)}.
+     * 
+     * @throws MojoFailureException
+     *             If the changelog cannot be written.
+     */
+    protected void finishChangelog() throws MojoFailureException {
+        if (changelog == null) {
+            return;
+        }
+        try {
+            final File file = changelog.get();
+            getLog().info("Changelog is written to '" + file + "'.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Writing changelog interrupted.");
+        } catch (ExecutionException e) {
+            throw new MojoFailureException("Cannot write changelog: "
+                    + e.getCause().getMessage(), e.getCause());
+        } finally {
+            changelog = null;
         }
     }
 
     /**
-     * Executes git merge --no-ff.
+     * Starts fetching the remote branches in background if
+     * <code>fetchRemote</code> is enabled, so the network work is done while
+     * the user answers the prompts. {@link #gitFetchRemoteAndCompare(String)}
+     * of these branches waits for the background fetch instead of fetching
+     * again.
      * 
-     * @param branchName
-     *            Branch name to merge.
+     * @param branchNames
+     *            Branch names to fetch.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitMergeNoff(final String branchName)
+    protected void gitStartPrefetch(final String... branchNames)
             throws MojoFailureException, CommandLineException {
-        gitMerge(branchName, false, true, false);
+        if (!fetchRemote || prefetch != null) {
+            return;
+        }
+
+        // branches fetched by previous goals are not fetched again
+        final List<String> branches = new ArrayList<String>();
+        for (String branchName : branchNames) {
+            if (getFetchAge(branchName) < 0) {
+                branches.add(branchName);
+            }
+        }
+        if (branches.isEmpty()) {
+            return;
+        }
+
+        // initialize executables
+        initExecutables();
+
+        getLog().info(
+                "Fetching remote branches '" + gitFlowConfig.getOrigin() + " "
+                        + StringUtils.join(branches.iterator(), " ")
+                        + "' in background.");
+
+        // git fetch --quiet origin develop master
+        final List<String> command = new ArrayList<String>();
+        command.add(cmdGit.getExecutable());
+        command.addAll(getFetchArgs(branches.toArray(new String[branches
+                .size()])));
+        final CommandRunner runner = new CommandRunner(
+                command.toArray(new String[command.size()]),
+                getWorkingDirectory());
+        runner.setTimeout(gitNetworkTimeout);
+
+        prefetch = new FutureTask<CommandResult>(
+                new Callable<CommandResult>() {
+                    @Override
+                    public CommandResult call() throws Exception {
+                        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+                        final int exitCode = runner.run(out, err);
+                        return new CommandResult(runner.isTimedOut() ? -1
+                                : exitCode, out.toString(), err.toString());
+                    }
+                });
+        prefetchBranches.addAll(branches);
+        final Thread thread = new Thread(prefetch, "gitflow-prefetch");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
-     * Executes git merge --squash.
+     * Waits for the background fetch of the branch.
      * 
      * @param branchName
-     *            Branch name to merge.
+     *            Branch name.
+     * @return Result of the fetch or <code>null</code> if the branch wasn't
+     *         fetched in background or the fetch failed.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitMergeSquash(final String branchName)
+    private CommandResult waitForPrefetch(final String branchName)
             throws MojoFailureException, CommandLineException {
-        getLog().info("Squashing '" + branchName + "' branch.");
-        executeGitCommand("merge", "--squash", branchName);
+        if (prefetch == null || !prefetchBranches.contains(branchName)) {
+            return null;
+        }
+        try {
+            final CommandResult result = prefetch.get();
+            if (fetchTags) {
+                // tags could be fetched after the index was built
+                versionTagIndex = null;
+            }
+            if (result.getExitCode() != SUCCESS_EXIT_CODE) {
+                if (getLog().isDebugEnabled()) {
+                    getLog().debug(result.getError());
+                }
+                return null;
+            }
+            recordFetch(branchName);
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            if (getLog().isDebugEnabled()) {
+                getLog().debug(e.getCause());
+            }
+            return null;
+        }
     }
 
     /**
-     * Executes git tag -a -m.
+     * Gets the time since the last fetch of the remote branch if it is within
+     * <code>fetchCacheTime</code>.
      * 
-     * @param tagName
-     *            Name of the tag.
-     * @param message
-     *            Tag message.
+     * @param branchName
+     *            Branch name.
+     * @return Milliseconds since the last fetch or <code>-1</code> if the
+     *         branch has to be fetched.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitTag(final String tagName, final String message)
+    private long getFetchAge(final String branchName)
             throws MojoFailureException, CommandLineException {
-        getLog().info("Creating '" + tagName + "' tag.");
-
-        executeGitCommand("tag", "-a", tagName, "-m", message);
+        if (fetchCacheTime <= 0 || forceFetch) {
+            return -1;
+        }
+        final long age = getFetchCache().getAge(gitFlowConfig.getOrigin(),
+                branchName, getRemoteBranchCommit(branchName));
+        return age <= fetchCacheTime * 1000L ? age : -1;
     }
 
     /**
-     * Executes git branch -d.
+     * Records the fetch of the remote branch if <code>fetchCacheTime</code>
+     * is set.
      * 
      * @param branchName
-     *            Branch name to delete.
+     *            Branch name.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitBranchDelete(final String branchName)
+    private void recordFetch(final String branchName)
             throws MojoFailureException, CommandLineException {
-        getLog().info("Deleting '" + branchName + "' branch.");
+        if (fetchCacheTime <= 0) {
+            return;
+        }
+        final String sha = getRemoteBranchCommit(branchName);
+        if (sha == null) {
+            return;
+        }
+        try {
+            getFetchCache().fetched(gitFlowConfig.getOrigin(), branchName,
+                    sha);
+        } catch (IOException e) {
+            // the branch is fetched again next time
+            if (getLog().isDebugEnabled()) {
+                getLog().debug(e);
+            }
+        }
+    }
 
-        executeGitCommand("branch", "-d", branchName);
+    private GitFetchCache getFetchCache() throws MojoFailureException,
+            CommandLineException {
+        if (fetchCache == null) {
+            fetchCache = new GitFetchCache(new File(getGitDir(),
+                    "gitflow/fetch.cache"));
+        }
+        return fetchCache;
     }
 
     /**
-     * Executes git branch -D.
-     * 
      * @param branchName
-     *            Branch name to delete.
+     *            Branch name.
+     * @return Object name of the remote-tracking branch or <code>null</code>
+     *         if it doesn't exist.
      * @throws MojoFailureException
      * @throws CommandLineException
      */
-    protected void gitBranchDeleteForce(final String branchName)
+    private String getRemoteBranchCommit(final String branchName)
             throws MojoFailureException, CommandLineException {
-        getLog().info("Deleting (-D) '" + branchName + "' branch.");
+        // git rev-parse --verify --quiet refs/remotes/origin/develop
+        final CommandResult result = executeGitCommandExitCode("rev-parse",
+                "--verify", "--quiet", "refs/remotes/"
+                        + gitFlowConfig.getOrigin() + "/" + branchName);
+        return result.getExitCode() == SUCCESS_EXIT_CODE ? result.getOut()
+                .trim() : null;
+    }
 
-        executeGitCommand("branch", "-D", branchName);
+    /**
+     * Gets arguments of git fetch of the remote branches.
+     * 
+     * @param branchNames
+     *            Branch names to fetch.
+     * @return Arguments.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private List<String> getFetchArgs(final String... branchNames)
+            throws MojoFailureException, CommandLineException {
+        final List<String> args = new ArrayList<String>();
+        // protocol v2 advertises only the refs matching the fetched ones
+        args.add("-c");
+        args.add("protocol.version=2");
+        args.add("fetch");
+        args.add("--quiet");
+        if (!fetchTags) {
+            args.add("--no-tags");
+        }
+        if (fetchDepth > 0 && new File(getGitDir(), "shallow").isFile()) {
+            args.add("--deepen=" + fetchDepth);
+        }
+        if (isPartialClone()) {
+            // keep fetching w/o blobs from the promisor remote, they are
+            // downloaded on demand
+            String filter = fetchFilter;
+            if (StringUtils.isBlank(filter)) {
+                filter = gitGetConfig().get("remote."
+                        + gitFlowConfig.getOrigin() + ".partialclonefilter");
+            }
+            if (StringUtils.isBlank(filter)) {
+                filter = "blob:none";
+            }
+            args.add("--filter=" + filter.trim());
+        }
+        args.add(gitFlowConfig.getOrigin());
+        for (String branchName : branchNames) {
+            args.add(branchName);
+        }
+        return args;
     }
 
     /**
-     * Executes git fetch and compares local branch with the remote.
+     * Executes git fetch and compares local branch with the remote. If the
+     * branch was fetched by {@link #gitStartPrefetch(String...)} only waits
+     * for the background fetch.
      * 
      * @param branchName
      *            Branch name to fetch and compare.
@@ -556,14 +2835,29 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      */
     protected void gitFetchRemoteAndCompare(final String branchName)
             throws MojoFailureException, CommandLineException {
-        getLog().info(
-                "Fetching remote branch '" + gitFlowConfig.getOrigin() + " "
-                        + branchName + "'.");
-
-        CommandResult result = executeGitCommandExitCode("fetch", "--quiet",
-                gitFlowConfig.getOrigin(), branchName);
+        CommandResult result = waitForPrefetch(branchName);
+        final long age = result == null ? getFetchAge(branchName) : -1;
+        if (age >= 0) {
+            getLog().info(
+                    "Remote branch '" + gitFlowConfig.getOrigin() + " "
+                            + branchName + "' was fetched " + age / 1000
+                            + " s ago, not fetching it again.");
+            result = new CommandResult(SUCCESS_EXIT_CODE, "", "");
+        } else if (result == null) {
+            getLog().info(
+                    "Fetching remote branch '" + gitFlowConfig.getOrigin()
+                            + " " + branchName + "'.");
+
+            final List<String> args = getFetchArgs(branchName);
+            result = executeGitCommandExitCode(args.toArray(new String[args
+                    .size()]));
+            if (result.getExitCode() == SUCCESS_EXIT_CODE) {
+                recordFetch(branchName);
+            }
+        }
 
         if (result.getExitCode() == SUCCESS_EXIT_CODE) {
+
             getLog().info(
                     "Comparing local branch '" + branchName + "' with remote '"
                             + gitFlowConfig.getOrigin() + "/" + branchName
@@ -572,11 +2866,9 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
                     "--left-right", "--count", branchName + "..."
                             + gitFlowConfig.getOrigin() + "/" + branchName);
 
-            String[] counts = org.apache.commons.lang3.StringUtils.split(
-                    revlistout, '\t');
+            String[] counts = StringUtils.split(revlistout, "\t");
             if (counts != null && counts.length > 1) {
-                if (!"0".equals(org.apache.commons.lang3.StringUtils
-                        .deleteWhitespace(counts[1]))) {
+                if (!"0".equals(StringUtils.deleteWhitespace(counts[1]))) {
                     throw new MojoFailureException(
                             "Remote branch is ahead of the local branch. Execute git pull.");
                 }
@@ -632,14 +2924,52 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
         getLog().info("Updating version(s) to '" + version + "'.");
 
         if (tychoBuild) {
-            executeMvnCommand(TYCHO_VERSIONS_PLUGIN_SET_GOAL, "-DnewVersion="
-                    + version, "-Dtycho.mode=maven");
+            if (!tychoNativeVersions || !setTychoVersions(version)) {
+                executeMvnCommand(TYCHO_VERSIONS_PLUGIN_SET_GOAL,
+                        "-DnewVersion=" + version, "-Dtycho.mode=maven");
+            }
         } else {
             executeMvnCommand(VERSIONS_MAVEN_PLUGIN_SET_GOAL, "-DnewVersion="
                     + version, "-DgenerateBackupPoms=false");
         }
     }
 
+    /**
+     * Updates versions of the Tycho project in-process with
+     * {@link TychoVersionUpdater}.
+     * 
+     * @param version
+     *            New version.
+     * @return <code>true</code> if the versions were updated,
+     *         <code>false</code> if the project layout is not supported and
+     *         nothing was changed.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private boolean setTychoVersions(final String version)
+            throws MojoFailureException, CommandLineException {
+        // module directories must be in the working tree
+        gitSparseCheckoutModules();
+
+        final List<File> changed;
+        try {
+            changed = new TychoVersionUpdater(getCurrentProjectVersion(),
+                    version).update(getVersionFiles());
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot update versions.", e);
+        }
+
+        if (changed == null) {
+            getLog().info(
+                    "Cannot update versions in-process, executing Tycho versions plugin.");
+            return false;
+        }
+        if (getLog().isDebugEnabled()) {
+            getLog().debug("Updated versions in " + changed.size() + " files.");
+        }
+        return true;
+    }
+
     /**
      * Executes mvn clean test.
      * 
@@ -680,7 +3010,7 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      */
     private String executeGitCommandReturn(final String... args)
             throws CommandLineException, MojoFailureException {
-        return executeCommand(cmdGit, true, args).getOut();
+        return executeCommand(cmdGit, true, null, args).getOut();
     }
 
     /**
@@ -694,7 +3024,7 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      */
     private CommandResult executeGitCommandExitCode(final String... args)
             throws CommandLineException, MojoFailureException {
-        return executeCommand(cmdGit, false, args);
+        return executeCommand(cmdGit, false, null, args);
     }
 
     /**
@@ -707,20 +3037,221 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      */
     private void executeGitCommand(final String... args)
             throws CommandLineException, MojoFailureException {
-        executeCommand(cmdGit, true, args);
+        executeCommand(cmdGit, true, null, args);
+    }
+
+    /**
+     * Executes Git command with binary input and output.
+     * 
+     * @param input
+     *            Bytes to write to the command standard input, can be
+     *            <code>null</code>.
+     * @param args
+     *            Git command line arguments.
+     * @return Command standard output.
+     * @throws CommandLineException
+     * @throws MojoFailureException
+     *             If command exit code is NOT equals to 0.
+     */
+    private byte[] executeGitCommandRaw(final byte[] input,
+            final String... args) throws CommandLineException,
+            MojoFailureException {
+        // initialize executables
+        initExecutables();
+
+        if (getLog().isDebugEnabled()) {
+            getLog().debug(
+                    cmdGit.getExecutable() + " " + StringUtils.join(args, " "));
+        }
+
+        final List<String> command = new ArrayList<String>();
+        command.add(cmdGit.getExecutable());
+        for (String arg : args) {
+            command.add(arg);
+        }
+
+        final CommandRunner runner = new CommandRunner(
+                command.toArray(new String[command.size()]),
+                getWorkingDirectory());
+        runner.setInput(input);
+        runner.setTimeout(getTimeout(cmdGit, args));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int exitCode;
+        try {
+            exitCode = runner.run(out, err);
+        } catch (IOException e) {
+            throw new CommandLineException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException(e.getMessage(), e);
+        }
+
+        checkTimeout(runner, cmdGit, args);
+        if (exitCode != SUCCESS_EXIT_CODE) {
+            throw new MojoFailureException(err.toString());
+        }
+        return out.toByteArray();
     }
 
     /**
-     * Executes Maven command.
+     * Executes Maven command. The output is not captured, it is copied to the
+     * console in <code>verbose</code> mode and discarded otherwise, only its
+     * tail is kept for the error message.
      * 
      * @param args
      *            Maven command line arguments.
      * @throws CommandLineException
      * @throws MojoFailureException
+     *             If command exit code is NOT equals to 0.
      */
     private void executeMvnCommand(final String... args)
             throws CommandLineException, MojoFailureException {
-        executeCommand(cmdMvn, true, args);
+        // initialize executables
+        initExecutables();
+
+        // git sparse-checkout add module1 module2 ...
+        gitSparseCheckoutModules();
+
+        if (getLog().isDebugEnabled()) {
+            getLog().debug(
+                    cmdMvn.getExecutable() + " " + StringUtils.join(args, " "));
+        }
+
+        cmdMvn.clearArgs();
+        cmdMvn.addArguments(args);
+
+        final CommandRunner runner = new CommandRunner(
+                cmdMvn.getShellCommandline(), cmdMvn.getWorkingDirectory());
+        runner.setTimeout(mvnTimeout);
+
+        final int exitCode;
+        try {
+            if (verbose) {
+                exitCode = runner.run(System.out, System.err);
+            } else {
+                exitCode = runner.run(CommandRunner.NULL_OUTPUT,
+                        CommandRunner.NULL_OUTPUT);
+            }
+        } catch (IOException e) {
+            throw new CommandLineException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException(e.getMessage(), e);
+        } finally {
+            System.out.flush();
+        }
+
+        checkTimeout(runner, cmdMvn, args);
+        if (exitCode != SUCCESS_EXIT_CODE) {
+            throw new MojoFailureException(runner.getOutputTail());
+        }
+    }
+
+    /**
+     * Executes Maven command in the given directory. Unlike the other
+     * command methods it can be called from several threads at once.
+     * 
+     * @param directory
+     *            Directory to execute the command in.
+     * @param output
+     *            Consumer of the command output and error lines.
+     * @param args
+     *            Maven command line arguments.
+     * @return Exit code of the command.
+     * @throws CommandLineException
+     */
+    protected int executeMvnCommandIn(final File directory,
+            final StreamConsumer output, final String... args)
+            throws CommandLineException {
+        final Commandline cmd = new Commandline();
+        cmd.setExecutable(StringUtils.isBlank(mvnExecutable) ? "mvn"
+                : mvnExecutable);
+        cmd.setWorkingDirectory(directory);
+        cmd.addArguments(args);
+
+        if (getLog().isDebugEnabled()) {
+            getLog().debug(
+                    directory + "> " + cmd.getExecutable() + " "
+                            + StringUtils.join(args, " "));
+        }
+
+        final CommandRunner runner = new CommandRunner(
+                cmd.getShellCommandline(), directory);
+        runner.setTimeout(mvnTimeout);
+        try {
+            final int exitCode = runner.run(output, output);
+            if (runner.isTimedOut()) {
+                output.consumeLine("Killed after timeout of " + mvnTimeout
+                        + " s.");
+            }
+            return exitCode;
+        } catch (IOException e) {
+            throw new CommandLineException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets timeout of the command.
+     * 
+     * @param cmd
+     *            Command line.
+     * @param args
+     *            Command line arguments.
+     * @return Timeout in seconds, 0 for no timeout.
+     */
+    private int getTimeout(final Commandline cmd, final String... args) {
+        if (cmd == cmdMvn) {
+            return mvnTimeout;
+        }
+        // skip configuration options, e.g. -c protocol.version=2
+        int i = 0;
+        while (i + 1 < args.length && "-c".equals(args[i])) {
+            i += 2;
+        }
+        if (i < args.length
+                && ("fetch".equals(args[i]) || "pull".equals(args[i])
+                        || "push".equals(args[i])
+                        || "ls-remote".equals(args[i]) || "clone"
+                            .equals(args[i]))) {
+            return gitNetworkTimeout;
+        }
+        return gitTimeout;
+    }
+
+    /**
+     * Fails if the command was killed on timeout.
+     * 
+     * @param runner
+     *            Command runner.
+     * @param cmd
+     *            Command line.
+     * @param args
+     *            Command line arguments.
+     * @throws MojoFailureException
+     *             If the command was killed on timeout.
+     */
+    private void checkTimeout(final CommandRunner runner,
+            final Commandline cmd, final String... args)
+            throws MojoFailureException {
+        if (runner.isTimedOut()) {
+            final StringBuilder message = new StringBuilder();
+            message.append("Command '").append(cmd.getExecutable())
+                    .append(' ').append(StringUtils.join(args, " "))
+                    .append("' timed out after ")
+                    .append(getTimeout(cmd, args))
+                    .append(" s and was killed.");
+            final String tail = runner.getOutputTail();
+            if (tail.length() > 0) {
+                message.append(LS).append("Last output:").append(LS)
+                        .append(tail);
+            }
+            throw new MojoFailureException(message.toString());
+        }
     }
 
     /**
@@ -730,6 +3261,9 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      *            Command line.
      * @param failOnError
      *            Whether to throw exception on NOT success exit code.
+     * @param input
+     *            Text to write to the command standard input, can be
+     *            <code>null</code>.
      * @param args
      *            Command line arguments.
      * @return {@link CommandResult} instance holding command exit code, output
@@ -740,7 +3274,8 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
      *             exit code is NOT equals to 0.
      */
     private CommandResult executeCommand(final Commandline cmd,
-            final boolean failOnError, final String... args)
+            final boolean failOnError, final String input,
+            final String... args)
             throws CommandLineException, MojoFailureException {
         // initialize executables
         initExecutables();
@@ -758,8 +3293,25 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
 
         final CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
 
+        final CommandRunner runner = new CommandRunner(
+                cmd.getShellCommandline(), cmd.getWorkingDirectory());
+        runner.setTimeout(getTimeout(cmd, args));
+
         // execute
-        final int exitCode = CommandLineUtils.executeCommandLine(cmd, out, err);
+        final int exitCode;
+        try {
+            if (input != null) {
+                runner.setInput(input.getBytes("UTF-8"));
+            }
+            exitCode = runner.run(out, err);
+        } catch (IOException e) {
+            throw new CommandLineException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandLineException(e.getMessage(), e);
+        }
+
+        checkTimeout(runner, cmd, args);
 
         String errorStr = err.getOutput();
         String outStr = out.getOutput();
@@ -776,6 +3328,44 @@ public abstract class AbstractGitFlowMojo extends AbstractMojo {
         return new CommandResult(exitCode, outStr, errorStr);
     }
 
+    /**
+     * Result of the merge of a branch into a target branch computed w/o
+     * changing the working tree or the references.
+     */
+    protected static class TrialMerge {
+        private final String tree;
+        private final String target;
+        private final String branch;
+
+        private TrialMerge(final String tree, final String target,
+                final String branch) {
+            this.tree = tree;
+            this.target = target;
+            this.branch = branch;
+        }
+
+        /**
+         * @return the tree of the merge result
+         */
+        public String getTree() {
+            return tree;
+        }
+
+        /**
+         * @return the commit of the target branch the tree is computed for
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the commit of the merged branch the tree is computed for
+         */
+        public String getBranch() {
+            return branch;
+        }
+    }
+
     private static class CommandResult {
         private final int exitCode;
         private final String out;
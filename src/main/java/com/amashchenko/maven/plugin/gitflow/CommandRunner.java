@@ -0,0 +1,398 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Runs external command with optional standard input and timeout. When the
+ * timeout expires the process and all its descendants are killed, e.g. a
+ * hung credential helper started by Git or forked test JVMs started by
+ * Maven. The tail of the output is kept for the error message.
+ * <p>
+ * The standard error and input of the processes are pumped by threads of a
+ * shared pool, so consecutive commands don't start new threads, and the
+ * standard output is copied in the calling thread directly to the given
+ * stream w/o decoding it into lines.
+ * </p>
+ * 
+ */
+public class CommandRunner {
+    /** Maximum number of bytes of the output kept as the tail. */
+    private static final int TAIL_SIZE = 4096;
+
+    /** Shared timer killing processes on timeout. */
+    private static final Timer WATCHDOG = new Timer("gitflow-command-timeout",
+            true);
+
+    /** Shared pool of threads pumping standard error and input. */
+    private static final ExecutorService PUMPERS = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r,
+                            "gitflow-command-pumper-"
+                                    + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** Output stream discarding everything written to it. */
+    public static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    };
+
+    /** Command line. */
+    private final String[] command;
+    /** Working directory, <code>null</code> for the current directory. */
+    private final File workDir;
+    /** Standard input. */
+    private byte[] input;
+    /** Timeout in seconds, 0 for no timeout. */
+    private int timeout;
+
+    /** Tail of the output and error. */
+    private final ByteArrayOutputStream tail = new ByteArrayOutputStream();
+    /** Whether the process was killed on timeout. */
+    private volatile boolean timedOut;
+
+    /**
+     * Creates runner.
+     * 
+     * @param command
+     *            Command line.
+     * @param workDir
+     *            Working directory, <code>null</code> for the current
+     *            directory.
+     */
+    public CommandRunner(final String[] command, final File workDir) {
+        this.command = command;
+        this.workDir = workDir;
+    }
+
+    /**
+     * @param input
+     *            Bytes to write to the standard input, can be
+     *            <code>null</code>
+     */
+    public void setInput(final byte[] input) {
+        this.input = input;
+    }
+
+    /**
+     * @param timeout
+     *            Timeout in seconds, 0 or less for no timeout
+     */
+    public void setTimeout(final int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Runs command and waits for it to finish. Standard input is closed
+     * after the input is written.
+     * 
+     * @param out
+     *            Stream to copy the standard output to.
+     * @param err
+     *            Stream to copy the standard error to.
+     * @return Exit code of the process.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int run(final OutputStream out, final OutputStream err)
+            throws IOException, InterruptedException {
+        final Process process = new ProcessBuilder(command).directory(
+                workDir).start();
+
+        TimerTask killer = null;
+        if (timeout > 0) {
+            killer = new TimerTask() {
+                @Override
+                public void run() {
+                    timedOut = true;
+                    destroyTree(process);
+                }
+            };
+            WATCHDOG.schedule(killer, timeout * 1000L);
+        }
+
+        boolean exited = false;
+        try {
+            Future<?> feeder = null;
+            if (input != null) {
+                feeder = PUMPERS.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            final OutputStream stdin = process
+                                    .getOutputStream();
+                            try {
+                                stdin.write(input);
+                            } finally {
+                                stdin.close();
+                            }
+                        } catch (IOException e) {
+                            // process exited early, reported by exit code
+                        }
+                    }
+                });
+            } else {
+                process.getOutputStream().close();
+            }
+            final Future<?> errPumper = PUMPERS.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        copy(process.getErrorStream(), err);
+                    } catch (IOException e) {
+                        // process was killed
+                    }
+                }
+            });
+
+            try {
+                copy(process.getInputStream(), out);
+            } catch (IOException e) {
+                if (!timedOut) {
+                    throw e;
+                }
+            }
+
+            final int exitCode = process.waitFor();
+            exited = true;
+            await(feeder);
+            await(errPumper);
+            return exitCode;
+        } finally {
+            if (killer != null) {
+                killer.cancel();
+            }
+            // interrupted or failed to read the output, don't leave the
+            // process and the stream pumpers running
+            if (!exited) {
+                destroyTree(process);
+            }
+        }
+    }
+
+    /**
+     * Runs command passing the output lines to the consumers.
+     * 
+     * @param out
+     *            Consumer of the standard output lines.
+     * @param err
+     *            Consumer of the standard error lines.
+     * @return Exit code of the process.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int run(final StreamConsumer out, final StreamConsumer err)
+            throws IOException, InterruptedException {
+        final LineOutputStream outLines = new LineOutputStream(out);
+        final LineOutputStream errLines = new LineOutputStream(err);
+        try {
+            return run(outLines, errLines);
+        } finally {
+            outLines.close();
+            errLines.close();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the process was killed on timeout
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Gets the last lines of the output and error of the process.
+     * 
+     * @return Output tail.
+     */
+    public String getOutputTail() {
+        synchronized (tail) {
+            String text = tail.toString();
+            final int eol = text.indexOf('\n');
+            if (tail.size() >= TAIL_SIZE && eol >= 0) {
+                // drop the partial first line
+                text = text.substring(eol + 1);
+            }
+            return text.trim();
+        }
+    }
+
+    private static void await(final Future<?> future) throws IOException,
+            InterruptedException {
+        if (future != null) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Stream pumping failed.", e.getCause());
+            }
+        }
+    }
+
+    private void copy(final InputStream in, final OutputStream out)
+            throws IOException {
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            synchronized (tail) {
+                if (n >= TAIL_SIZE) {
+                    tail.reset();
+                    tail.write(buffer, n - TAIL_SIZE, TAIL_SIZE);
+                } else {
+                    if (tail.size() + n > TAIL_SIZE) {
+                        final byte[] kept = tail.toByteArray();
+                        final int keep = TAIL_SIZE - n;
+                        tail.reset();
+                        tail.write(kept, kept.length - keep, keep);
+                    }
+                    tail.write(buffer, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Kills the process and all its descendants. Descendants are only known
+     * on Java 9 and later, on older versions only the process itself is
+     * killed.
+     * 
+     * @param process
+     *            Process to kill.
+     */
+    static void destroyTree(final Process process) {
+        try {
+            final Class<?> handleClass = Class
+                    .forName("java.lang.ProcessHandle");
+            final Method descendants = handleClass.getMethod("descendants");
+            final Method destroyForcibly = handleClass
+                    .getMethod("destroyForcibly");
+            final Object handle = Process.class.getMethod("toHandle").invoke(
+                    process);
+            final Object stream = descendants.invoke(handle);
+            final Iterator<?> iterator = (Iterator<?>) Class
+                    .forName("java.util.stream.BaseStream")
+                    .getMethod("iterator").invoke(stream);
+
+            // collect first, killed children are re-parented
+            final List<Object> handles = new ArrayList<Object>();
+            while (iterator.hasNext()) {
+                handles.add(iterator.next());
+            }
+            // stop the process first, so it doesn't start new children
+            // when the collected ones exit
+            process.destroy();
+            for (Object child : handles) {
+                destroyForcibly.invoke(child);
+            }
+        } catch (Exception e) {
+            // Java 8 or older, descendants are not known
+        }
+        process.destroy();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(command);
+    }
+
+    /**
+     * Output stream passing complete lines to the consumer.
+     */
+    public static class LineOutputStream extends OutputStream {
+        private final StreamConsumer consumer;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        /**
+         * @param consumer
+         *            Consumer of the lines.
+         */
+        public LineOutputStream(final StreamConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (b == '\n') {
+                flushLine();
+            } else {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    line.write(b, start, i - start);
+                    flushLine();
+                    start = i + 1;
+                }
+            }
+            line.write(b, start, off + len - start);
+        }
+
+        @Override
+        public void close() {
+            if (line.size() > 0) {
+                flushLine();
+            }
+        }
+
+        private void flushLine() {
+            String text = line.toString();
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            line.reset();
+            consumer.consumeLine(text);
+        }
+    }
+}
@@ -31,6 +31,8 @@ public class CommitMessages {
     private String releaseStartMessage;
     private String releaseFinishMessage;
 
+    private String supportStartMessage;
+
     private String tagHotfixMessage;
     private String tagReleaseMessage;
 
@@ -44,6 +46,8 @@ public class CommitMessages {
         releaseStartMessage = "update versions for release";
         releaseFinishMessage = "update for next development version";
 
+        supportStartMessage = "update versions for support branch";
+
         tagHotfixMessage = "tag hotfix";
         tagReleaseMessage = "tag release";
     }
@@ -138,6 +142,21 @@ public class CommitMessages {
         this.releaseFinishMessage = releaseFinishMessage;
     }
 
+    /**
+     * @return the supportStartMessage
+     */
+    public String getSupportStartMessage() {
+        return supportStartMessage;
+    }
+
+    /**
+     * @param supportStartMessage
+     *            the supportStartMessage to set
+     */
+    public void setSupportStartMessage(String supportStartMessage) {
+        this.supportStartMessage = supportStartMessage;
+    }
+
     /**
      * @return the tagHotfixMessage
      */
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Properties;
+
+/**
+ * Times of the last fetches of the remote branches, kept across goal
+ * executions, so a branch fetched a moment ago by a previous goal is not
+ * fetched again.
+ * <p>
+ * Format of the file is properties file with
+ * <code>&lt;remote&gt;/&lt;branch&gt;=&lt;time&gt; &lt;sha&gt;</code>
+ * entries, where time is in milliseconds and sha is the object name of the
+ * remote-tracking branch after the fetch. The entry is used only while the
+ * remote-tracking branch still points to the same object.
+ * </p>
+ * <p>
+ * Goals executed at the same time update the file one after another, holding
+ * a lock on the <code>.lock</code> file next to it. The file is replaced by
+ * renaming a temporary file. Where the rename cannot replace a file, the old
+ * file is deleted first, and a goal reading the cache meanwhile fetches again.
+ * </p>
+ * 
+ */
+public class GitFetchCache {
+    /** Lock of the goals in the same JVM, file locks are per process. */
+    private static final Object LOCK = new Object();
+
+    /** Cache file. */
+    private final File file;
+    /** Entries. */
+    private final Properties entries = new Properties();
+
+    /**
+     * Creates cache and loads the cache file if it exists.
+     * 
+     * @param file
+     *            Cache file.
+     */
+    public GitFetchCache(final File file) {
+        this.file = file;
+        load();
+    }
+
+    private void load() {
+        entries.clear();
+        if (file.isFile()) {
+            try {
+                final InputStream in = new FileInputStream(file);
+                try {
+                    entries.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // broken cache, fetch everything
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Gets the age of the last fetch of the branch.
+     * 
+     * @param remote
+     *            Remote name.
+     * @param branchName
+     *            Branch name.
+     * @param sha
+     *            Current object name of the remote-tracking branch.
+     * @return Milliseconds since the last fetch or <code>-1</code> if the
+     *         branch wasn't fetched or the remote-tracking branch was changed
+     *         since.
+     */
+    public long getAge(final String remote, final String branchName,
+            final String sha) {
+        final String entry = entries.getProperty(remote + "/" + branchName);
+        if (entry == null || sha == null) {
+            return -1;
+        }
+        final int space = entry.indexOf(' ');
+        if (space < 0 || !entry.substring(space + 1).equals(sha)) {
+            return -1;
+        }
+        try {
+            final long age = System.currentTimeMillis()
+                    - Long.parseLong(entry.substring(0, space));
+            return age < 0 ? -1 : age;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Records fetch of the branch and writes the cache file.
+     * 
+     * @param remote
+     *            Remote name.
+     * @param branchName
+     *            Branch name.
+     * @param sha
+     *            Object name of the remote-tracking branch after the fetch.
+     * @throws IOException
+     */
+    public void fetched(final String remote, final String branchName,
+            final String sha) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        // created by another goal meanwhile if mkdirs fails
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create directory '" + dir + "'.");
+        }
+
+        synchronized (LOCK) {
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(
+                    dir, file.getName() + ".lock"), "rw");
+            try {
+                final FileLock lock = lockFile.getChannel().lock();
+                try {
+                    // keep the entries written by other goals meanwhile
+                    load();
+                    entries.setProperty(remote + "/" + branchName,
+                            System.currentTimeMillis() + " " + sha);
+                    write(dir);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    private void write(final File dir) throws IOException {
+        final File tmp = File.createTempFile(file.getName() + "-", ".tmp",
+                dir);
+        try {
+            final OutputStream out = new FileOutputStream(tmp);
+            try {
+                entries.store(out, null);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Cannot write '" + file + "'.");
+                }
+            }
+        } finally {
+            if (tmp.isFile()) {
+                tmp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+/**
+ * Changelog of the commits between two versions. Consumes lines of
+ * <code>git log --topo-order --format=%H%x09%P%x09%h%x09%s</code> and groups
+ * them into feature merges, hotfix merges and other commits. Each group is
+ * written to its own temporary file as the lines arrive, so the history is
+ * never held in memory, and the groups are concatenated into the changelog
+ * file by {@link #close()}.
+ * <p>
+ * The changelog is written as JSON if the file name ends with
+ * <code>.json</code> and as Markdown otherwise. Merges of other branches,
+ * e.g. release branches, are skipped but the commits they merged are listed.
+ * Commits merged by feature and hotfix merges are not listed, only the
+ * merges are.
+ * </p>
+ * 
+ */
+public class GitFlowChangelog implements StreamConsumer {
+    /** Subject of the merge commit created by git merge. */
+    private static final Pattern MERGE_SUBJECT = Pattern
+            .compile("^Merge (?:remote-tracking )?branch '([^']+)'.*");
+
+    /** Group titles, in the order of the groups. */
+    private static final String[] TITLES = { "Features", "Hotfixes",
+            "Other changes" };
+    /** JSON names of the groups. */
+    private static final String[] NAMES = { "features", "hotfixes", "other" };
+
+    private static final int FEATURES = 0;
+    private static final int HOTFIXES = 1;
+    private static final int OTHER = 2;
+
+    /** Changelog file. */
+    private final File file;
+    /** Whether to write JSON. */
+    private final boolean json;
+    /** Version the changelog is written for. */
+    private final String version;
+    /** Previous version tag, can be <code>null</code>. */
+    private final String previousTag;
+    /** Prefix of the feature branches. */
+    private final String featurePrefix;
+    /** Prefix of the hotfix branches. */
+    private final String hotfixPrefix;
+
+    /** Temporary files of the groups. */
+    private final File[] groupFiles = new File[TITLES.length];
+    /** Writers of the groups. */
+    private final Writer[] groups = new Writer[TITLES.length];
+    /** Number of entries in the groups. */
+    private final int[] counts = new int[TITLES.length];
+    /** First failure of writing the groups. */
+    private IOException failure;
+    /**
+     * Commits to list, i.e. parents of the listed commits w/o the merged
+     * parents of feature and hotfix merges. <code>null</code> until the first
+     * commit.
+     */
+    private Set<String> listed;
+
+    /**
+     * Creates changelog.
+     * 
+     * @param file
+     *            Changelog file.
+     * @param version
+     *            Version the changelog is written for.
+     * @param previousTag
+     *            Previous version tag, <code>null</code> if there is none.
+     * @param featurePrefix
+     *            Prefix of the feature branches.
+     * @param hotfixPrefix
+     *            Prefix of the hotfix branches.
+     * @throws IOException
+     */
+    public GitFlowChangelog(final File file, final String version,
+            final String previousTag, final String featurePrefix,
+            final String hotfixPrefix) throws IOException {
+        this.file = file;
+        this.json = file.getName().endsWith(".json");
+        this.version = version;
+        this.previousTag = previousTag;
+        this.featurePrefix = featurePrefix;
+        this.hotfixPrefix = hotfixPrefix;
+
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory '" + dir + "'.");
+        }
+        try {
+            for (int i = 0; i < groups.length; i++) {
+                // in java.io.tmpdir, not next to the changelog file
+                groupFiles[i] = File.createTempFile("changelog-", ".tmp");
+                groups[i] = new OutputStreamWriter(new FileOutputStream(
+                        groupFiles[i]), "UTF-8");
+            }
+        } catch (IOException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void consumeLine(final String line) {
+        final String[] parts = line.split("\t", 4);
+        if (parts.length < 4 || failure != null) {
+            return;
+        }
+        // children come before parents in topological order, so the commit
+        // is known to be listed when it is reached
+        if (listed == null) {
+            listed = new HashSet<String>();
+        } else if (!listed.remove(parts[0])) {
+            return;
+        }
+        final String[] parents = parts[1].split(" ");
+        final boolean merge = parents.length > 1;
+        final String commit = parts[2];
+        final String subject = parts[3];
+
+        String branch = null;
+        if (merge) {
+            final Matcher m = MERGE_SUBJECT.matcher(subject);
+            if (m.matches()) {
+                branch = m.group(1);
+            }
+        } else if (featurePrefix.length() > 0
+                && subject.startsWith(featurePrefix)
+                && subject.indexOf(' ') < 0) {
+            // commit of the squashed feature branch
+            branch = subject;
+        }
+
+        final boolean grouped = branch != null
+                && (branch.startsWith(featurePrefix) || branch
+                        .startsWith(hotfixPrefix));
+        if (merge && grouped) {
+            // the merged commits are part of the feature or hotfix
+            listed.add(parents[0]);
+        } else {
+            for (String parent : parents) {
+                if (parent.length() > 0) {
+                    listed.add(parent);
+                }
+            }
+        }
+
+        try {
+            if (branch == null) {
+                if (!merge) {
+                    add(OTHER, commit, subject);
+                }
+            } else if (branch.startsWith(featurePrefix)) {
+                add(FEATURES, commit,
+                        branch.substring(featurePrefix.length()));
+            } else if (branch.startsWith(hotfixPrefix)) {
+                add(HOTFIXES, commit, branch.substring(hotfixPrefix.length()));
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void add(final int group, final String commit, final String text)
+            throws IOException {
+        final Writer writer = groups[group];
+        if (json) {
+            writer.write(counts[group] == 0 ? "\n    " : ",\n    ");
+            writer.write("{\"commit\": \"" + escapeJson(commit)
+                    + "\", \"title\": \"" + escapeJson(text) + "\"}");
+        } else {
+            writer.write("- " + text + " (" + commit + ")\n");
+        }
+        counts[group]++;
+    }
+
+    /**
+     * Writes the changelog file and deletes the temporary files.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        try {
+            for (Writer writer : groups) {
+                writer.close();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+
+            final OutputStream stream = new FileOutputStream(file);
+            final Writer out = new OutputStreamWriter(stream, "UTF-8");
+            try {
+                if (json) {
+                    out.write("{\n  \"version\": \"" + escapeJson(version)
+                            + "\",\n  \"previousTag\": "
+                            + (previousTag == null ? "null" : "\""
+                                    + escapeJson(previousTag) + "\""));
+                } else {
+                    out.write("# " + version + "\n");
+                    if (previousTag != null) {
+                        out.write("\nChanges since " + previousTag + ".\n");
+                    }
+                }
+                for (int i = 0; i < groups.length; i++) {
+                    if (json) {
+                        out.write(",\n  \"" + NAMES[i] + "\": [");
+                        out.flush();
+                        copy(groupFiles[i], stream);
+                        out.write(counts[i] == 0 ? "]" : "\n  ]");
+                    } else if (counts[i] > 0) {
+                        out.write("\n## " + TITLES[i] + "\n\n");
+                        out.flush();
+                        copy(groupFiles[i], stream);
+                    }
+                }
+                out.write(json ? "\n}\n" : "");
+            } finally {
+                out.close();
+            }
+        } finally {
+            discard();
+        }
+    }
+
+    /**
+     * @return Changelog file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private static void copy(final File groupFile, final OutputStream out)
+            throws IOException {
+        final InputStream in = new FileInputStream(groupFile);
+        try {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void discard() {
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i] != null) {
+                try {
+                    groups[i].close();
+                } catch (IOException e) {
+                    // deleted anyway
+                }
+            }
+            if (groupFiles[i] != null) {
+                groupFiles[i].delete();
+            }
+        }
+    }
+
+    private static String escapeJson(final String s) {
+        final StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -16,13 +16,13 @@
 package com.amashchenko.maven.plugin.gitflow;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 
@@ -56,6 +56,40 @@ public class GitFlowFeatureFinishMojo extends AbstractGitFlowMojo {
     @Parameter(property = "featureSquash", defaultValue = "false")
     private boolean featureSquash = false;
 
+    /**
+     * Whether to compute the squashed tree and write the squash commit
+     * directly in the Git object database, so the working tree is updated
+     * only once at the end. Used only with <code>featureSquash</code>, falls
+     * back to <code>git merge --squash</code> if the branches have conflicts
+     * or Git is older than 2.38. Commit hooks are not run for such commits.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "directCommit", defaultValue = "false")
+    private boolean directCommit = false;
+
+    /**
+     * Name of the feature branch to finish, with or w/o the feature branch
+     * prefix. If set the branch is not chosen interactively.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "featureName")
+    private String featureName;
+
+    /**
+     * Comma separated names of the feature branches to finish together as a
+     * merge train, with or w/o the feature branch prefix, or <code>*</code>
+     * for all feature branches. The branches are merged in the given order
+     * (oldest first for <code>*</code>) and tested once. If the tests fail the
+     * first failing branch is found by bisecting and the development branch
+     * is left unchanged.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "featureNames")
+    private String featureNames;
+
     /** {@inheritDoc} */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -63,108 +97,319 @@ public class GitFlowFeatureFinishMojo extends AbstractGitFlowMojo {
             // check uncommitted changes
             checkUncommittedChanges();
 
-            // git for-each-ref --format='%(refname:short)' refs/heads/feature/*
-            final String featureBranches = gitFindBranches(
-                    gitFlowConfig.getFeatureBranchPrefix(), false);
+            // collect tag and branch changes, applied before pushing
+            gitStartRefTransaction();
+
+            // git for-each-ref --sort=-committerdate
+            // --format='%(refname:short)' refs/heads/feature/*
+            final List<String> featureBranches = gitListBranchesByDate(gitFlowConfig
+                    .getFeatureBranchPrefix());
 
-            if (StringUtils.isBlank(featureBranches)) {
+            if (featureBranches.isEmpty()) {
                 throw new MojoFailureException("There are no feature branches.");
             }
 
-            // fetch and check remote
-            if (fetchRemote) {
-                gitFetchRemoteAndCompare(gitFlowConfig.getDevelopmentBranch());
-            }
+            // fetch remote while the branch is chosen
+            gitStartPrefetch(gitFlowConfig.getDevelopmentBranch());
 
-            final String[] branches = featureBranches.split("\\r?\\n");
+            if (StringUtils.isNotBlank(featureNames)) {
+                final List<String> train = selectTrain(featureBranches);
 
-            List<String> numberedList = new ArrayList<String>();
-            StringBuilder str = new StringBuilder("Feature branches:")
-                    .append(LS);
-            for (int i = 0; i < branches.length; i++) {
-                str.append((i + 1) + ". " + branches[i] + LS);
-                numberedList.add(String.valueOf(i + 1));
-            }
-            str.append("Choose feature branch to finish");
+                // check remote
+                if (fetchRemote) {
+                    gitFetchRemoteAndCompare(gitFlowConfig
+                            .getDevelopmentBranch());
+                }
 
-            String featureNumber = null;
-            try {
-                while (StringUtils.isBlank(featureNumber)) {
-                    featureNumber = prompter.prompt(str.toString(),
-                            numberedList);
+                finishTrain(train);
+            } else {
+                final String featureBranchName = promptBranchName(
+                        "Feature branches",
+                        gitFlowConfig.getFeatureBranchPrefix(),
+                        featureBranches, featureName);
+
+                if (StringUtils.isBlank(featureBranchName)) {
+                    throw new MojoFailureException(
+                            "Feature branch name to finish is blank.");
                 }
-            } catch (PrompterException e) {
-                getLog().error(e);
-            }
 
-            String featureBranchName = null;
-            if (featureNumber != null) {
-                int num = Integer.parseInt(featureNumber);
-                featureBranchName = branches[num - 1];
-            }
+                // check remote
+                if (fetchRemote) {
+                    gitFetchRemoteAndCompare(gitFlowConfig
+                            .getDevelopmentBranch());
+                }
 
-            if (StringUtils.isBlank(featureBranchName)) {
-                throw new MojoFailureException(
-                        "Feature branch name to finish is blank.");
-            }
+                // check conflicts before testing
+                // git merge-tree --write-tree develop feature/...
+                gitTrialMerge(featureBranchName,
+                        Collections.singletonList(gitFlowConfig
+                                .getDevelopmentBranch()));
+
+                if (!skipTestProject) {
+                    // git checkout feature/...
+                    gitCheckout(featureBranchName);
+
+                    // mvn clean test
+                    mvnCleanTest();
+                }
+
+                // git checkout develop
+                gitCheckout(gitFlowConfig.getDevelopmentBranch());
 
-            if (!skipTestProject) {
-                // git checkout feature/...
-                gitCheckout(featureBranchName);
+                mergeFeature(featureBranchName, false);
 
-                // mvn clean test
-                mvnCleanTest();
+                if (installProject) {
+                    // mvn clean install
+                    mvnCleanInstall();
+                }
+
+                deleteFeature(featureBranchName);
             }
 
-            // git checkout develop
-            gitCheckout(gitFlowConfig.getDevelopmentBranch());
+            // git update-ref --stdin
+            gitCommitRefTransaction();
 
-            if (featureSquash) {
+            if (pushRemote) {
+                gitPush(gitFlowConfig.getDevelopmentBranch(), false);
+            }
+        } catch (CommandLineException e) {
+            getLog().error(e);
+        }
+    }
+
+    /**
+     * Merges feature branch into the current branch and removes the feature
+     * name from the project version.
+     * 
+     * @param featureBranchName
+     *            Feature branch name.
+     * @param detached
+     *            Whether the current branch is a detached <code>HEAD</code>.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private void mergeFeature(final String featureBranchName,
+            final boolean detached)
+            throws MojoFailureException, CommandLineException {
+        if (featureSquash) {
+            // git merge-tree --write-tree develop feature/...
+            if (!directCommit
+                    || !gitMergeSquashDirect(featureBranchName,
+                            featureBranchName)) {
                 // git merge --squash feature/...
                 gitMergeSquash(featureBranchName);
                 gitCommit(featureBranchName);
-            } else {
-                // git merge --no-ff feature/...
-                gitMergeNoff(featureBranchName);
             }
+        } else if (detached) {
+            // git merge --no-ff -m "Merge branch 'feature/...' into develop"
+            gitMergeNoff(featureBranchName, "Merge branch '"
+                    + featureBranchName + "' into "
+                    + gitFlowConfig.getDevelopmentBranch());
+        } else {
+            // git merge --no-ff feature/...
+            gitMergeNoff(featureBranchName);
+        }
 
-            // get current project version from pom
-            final String currentVersion = getCurrentProjectVersion();
+        // get current project version from pom
+        final String currentVersion = getCurrentProjectVersion();
 
-            final String featureName = featureBranchName.replaceFirst(
-                    gitFlowConfig.getFeatureBranchPrefix(), "");
+        final String featName = featureBranchName.replaceFirst(
+                gitFlowConfig.getFeatureBranchPrefix(), "");
 
-            if (currentVersion.contains("-" + featureName)) {
-                final String version = currentVersion.replaceFirst("-"
-                        + featureName, "");
+        if (currentVersion.contains("-" + featName)) {
+            final String version = currentVersion.replaceFirst("-" + featName,
+                    "");
 
-                // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
-                mvnSetVersions(version);
+            // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
+            mvnSetVersions(version);
 
-                // git commit -a -m updating versions for development branch
-                gitCommit(commitMessages.getFeatureFinishMessage());
+            // git commit --only -m updating versions for development branch
+            gitCommitVersionFiles(commitMessages.getFeatureFinishMessage());
+        }
+    }
+
+    /**
+     * Deletes feature branch unless it should be kept.
+     * 
+     * @param featureBranchName
+     *            Feature branch name.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private void deleteFeature(final String featureBranchName)
+            throws MojoFailureException, CommandLineException {
+        if (!keepBranch) {
+            if (featureSquash) {
+                // git branch -D feature/...
+                gitBranchDeleteForce(featureBranchName);
+            } else {
+                // git branch -d feature/...
+                gitBranchDelete(featureBranchName);
             }
+        }
+    }
 
-            if (installProject) {
-                // mvn clean install
-                mvnCleanInstall();
+    /**
+     * Selects feature branches of the merge train.
+     * 
+     * @param featureBranches
+     *            Existing feature branches, most recent first.
+     * @return Feature branches in merge order.
+     * @throws MojoFailureException
+     */
+    private List<String> selectTrain(final List<String> featureBranches)
+            throws MojoFailureException {
+        final String prefix = gitFlowConfig.getFeatureBranchPrefix();
+        final List<String> train = new ArrayList<String>();
+        if ("*".equals(featureNames.trim())) {
+            train.addAll(featureBranches);
+            Collections.reverse(train);
+        } else {
+            for (String name : featureNames.split(",")) {
+                name = name.trim();
+                if (name.length() == 0) {
+                    continue;
+                }
+                final String branch = name.startsWith(prefix) ? name
+                        : prefix + name;
+                if (!featureBranches.contains(branch)) {
+                    throw new MojoFailureException("Feature branch '"
+                            + branch + "' doesn't exist.");
+                }
+                if (!train.contains(branch)) {
+                    train.add(branch);
+                }
             }
+        }
+        if (train.isEmpty()) {
+            throw new MojoFailureException(
+                    "Feature branch names to finish are blank.");
+        }
+        return train;
+    }
+
+    /**
+     * Merges feature branches one by one on a detached <code>HEAD</code> at
+     * the development branch and tests the result once. If tests fail, the
+     * merge train is bisected to find the first failing branch. The
+     * development branch is fast-forwarded to the train only after the tests
+     * pass, so it is unchanged if the goal fails or is killed.
+     * 
+     * @param train
+     *            Feature branches in merge order.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private void finishTrain(final List<String> train)
+            throws MojoFailureException, CommandLineException {
+        getLog().info(
+                "Finishing " + train.size() + " feature branches: "
+                        + StringUtils.join(train.iterator(), ", "));
 
-            if (!keepBranch) {
-                if (featureSquash) {
-                    // git branch -D feature/...
-                    gitBranchDeleteForce(featureBranchName);
-                } else {
-                    // git branch -d feature/...
-                    gitBranchDelete(featureBranchName);
+        // git rev-parse --verify develop^{commit}
+        final String base = gitResolveCommit(gitFlowConfig
+                .getDevelopmentBranch());
+
+        boolean finished = false;
+        try {
+            // git checkout <commit>
+            gitCheckout(base);
+
+            // commits of the train after each feature branch
+            final List<String> heads = new ArrayList<String>();
+            for (String featureBranchName : train) {
+                try {
+                    mergeFeature(featureBranchName, true);
+                } catch (MojoFailureException e) {
+                    throw new MojoFailureException("Cannot merge '"
+                            + featureBranchName
+                            + "', development branch is left unchanged. "
+                            + e.getMessage());
                 }
+                heads.add(gitResolveCommit("HEAD"));
             }
 
-            if (pushRemote) {
-                gitPush(gitFlowConfig.getDevelopmentBranch(), false);
+            if (!skipTestProject && !testsPass()) {
+                // the base is assumed to pass, the whole train fails
+                int good = 0;
+                int bad = train.size();
+                while (bad - good > 1) {
+                    final int mid = (good + bad) / 2;
+                    getLog().info(
+                            "Testing merge train up to '"
+                                    + train.get(mid - 1) + "'.");
+
+                    // git checkout <commit>
+                    gitCheckout(heads.get(mid - 1));
+                    if (testsPass()) {
+                        good = mid;
+                    } else {
+                        bad = mid;
+                    }
+                }
+
+                throw new MojoFailureException("Tests failed after merging '"
+                        + train.get(bad - 1)
+                        + "', development branch is left unchanged.");
             }
-        } catch (CommandLineException e) {
-            getLog().error(e);
+
+            // git checkout develop
+            gitCheckout(gitFlowConfig.getDevelopmentBranch());
+
+            // git merge --ff-only <commit>
+            gitMerge(heads.get(heads.size() - 1), false, false, true);
+            finished = true;
+        } finally {
+            if (!finished) {
+                restoreDevelopmentBranch();
+            }
+        }
+
+        if (installProject) {
+            // mvn clean install
+            mvnCleanInstall();
+        }
+
+        for (String featureBranchName : train) {
+            deleteFeature(featureBranchName);
+        }
+    }
+
+    /**
+     * Discards the merge train and checks out the development branch after
+     * a failure. Errors are only logged, so they don't hide the failure.
+     */
+    private void restoreDevelopmentBranch() {
+        try {
+            // git reset --hard HEAD, discards unfinished merge
+            gitResetHard("HEAD");
+
+            // git checkout develop
+            gitCheckout(gitFlowConfig.getDevelopmentBranch());
+        } catch (Exception e) {
+            getLog().warn(
+                    "Cannot check out development branch after the failure: "
+                            + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs Maven tests of the current working tree.
+     * 
+     * @return <code>true</code> if tests pass.
+     * @throws CommandLineException
+     */
+    private boolean testsPass() throws CommandLineException {
+        try {
+            // mvn clean test
+            mvnCleanTest();
+            return true;
+        } catch (MojoFailureException e) {
+            getLog().info("Tests failed.");
+            if (getLog().isDebugEnabled()) {
+                getLog().debug(e);
+            }
+            return false;
         }
     }
 }
@@ -15,13 +15,10 @@
  */
 package com.amashchenko.maven.plugin.gitflow;
 
-import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.shared.release.versions.DefaultVersionInfo;
-import org.apache.maven.shared.release.versions.VersionParseException;
 import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
@@ -96,10 +93,9 @@ public class GitFlowFeatureStartMojo extends AbstractGitFlowMojo {
 
                 String version = null;
                 try {
-                    final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                            currentVersion);
-                    version = versionInfo.getReleaseVersionString() + "-"
-                            + featureName + "-" + Artifact.SNAPSHOT_VERSION;
+                    final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                            .parse(currentVersion);
+                    version = versionInfo.getFeatureVersionString(featureName);
                 } catch (VersionParseException e) {
                     if (getLog().isDebugEnabled()) {
                         getLog().debug(e);
@@ -111,8 +107,9 @@ public class GitFlowFeatureStartMojo extends AbstractGitFlowMojo {
                     // -DgenerateBackupPoms=false
                     mvnSetVersions(version);
 
-                    // git commit -a -m updating versions for feature branch
-                    gitCommit(commitMessages.getFeatureStartMessage());
+                    // git commit --only -m updating versions for feature branch
+                    gitCommitVersionFiles(commitMessages
+                            .getFeatureStartMessage());
                 }
             }
 
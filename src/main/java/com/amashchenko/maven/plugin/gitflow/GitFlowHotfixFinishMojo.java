@@ -17,6 +17,7 @@ package com.amashchenko.maven.plugin.gitflow;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
@@ -24,9 +25,6 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.shared.release.versions.DefaultVersionInfo;
-import org.apache.maven.shared.release.versions.VersionParseException;
-import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 
@@ -55,19 +53,84 @@ public class GitFlowHotfixFinishMojo extends AbstractGitFlowMojo {
     @Parameter(property = "skipTestProject", defaultValue = "false")
     private boolean skipTestProject = false;
 
+    /**
+     * Hotfix version (name of the hotfix branch w/o the hotfix branch prefix)
+     * to finish. If set the branch is not chosen interactively.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "hotfixVersion")
+    private String hotfixVersion;
+
+    /**
+     * Whether to resume the failed execution of the goal. Steps completed by
+     * the failed execution, e.g. tests and merges, are not repeated.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "resume", defaultValue = "false")
+    private boolean resume = false;
+
+    /**
+     * Whether to merge the hotfix branch also into the support branches. Only
+     * the support branches which contain the commit the hotfix branch was
+     * started from, i.e. its merge base with the production branch, are
+     * merged, so the production history after the support branch was started
+     * is not merged into it. Other support branches are skipped and have to
+     * be fixed separately. The support branches are merged w/o checking them
+     * out and are pushed with the production branch.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "mergeSupportBranches", defaultValue = "false")
+    private boolean mergeSupportBranches = false;
+
     /** {@inheritDoc} */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        GitFlowJournal journal = null;
         try {
             // check uncommitted changes
             checkUncommittedChanges();
 
-            // git for-each-ref --format='%(refname:short)' refs/heads/hotfix/*
-            final String hotfixBranches = gitFindBranches(
-                    gitFlowConfig.getHotfixBranchPrefix(), false);
+            // collect tag and branch changes, applied before pushing
+            gitStartRefTransaction();
 
-            if (StringUtils.isBlank(hotfixBranches)) {
-                throw new MojoFailureException("There is no hotfix branches.");
+            // fetch remote while the branch is chosen
+            if (notSameProdDevName()) {
+                gitStartPrefetch(gitFlowConfig.getDevelopmentBranch(),
+                        gitFlowConfig.getProductionBranch());
+            } else {
+                gitStartPrefetch(gitFlowConfig.getProductionBranch());
+            }
+
+            // .git/gitflow/hotfix-finish.journal
+            journal = gitOpenJournal("hotfix-finish", resume);
+
+            final String hotfixBranchName;
+            if (journal.isResumed()) {
+                hotfixBranchName = journal.getBranch();
+            } else {
+                // git for-each-ref --sort=-committerdate
+                // --format='%(refname:short)' refs/heads/hotfix/*
+                final List<String> hotfixBranches = gitListBranchesByDate(
+                        gitFlowConfig.getHotfixBranchPrefix());
+
+                if (hotfixBranches.isEmpty()) {
+                    throw new MojoFailureException(
+                            "There is no hotfix branches.");
+                }
+
+                hotfixBranchName = promptBranchName("Hotfix branches",
+                        gitFlowConfig.getHotfixBranchPrefix(),
+                        hotfixBranches, hotfixVersion);
+
+                if (StringUtils.isBlank(hotfixBranchName)) {
+                    throw new MojoFailureException(
+                            "Hotfix branch name to finish is blank.");
+                }
+
+                startJournal(journal, hotfixBranchName);
             }
 
             // fetch and check remote
@@ -79,121 +142,213 @@ public class GitFlowHotfixFinishMojo extends AbstractGitFlowMojo {
                 gitFetchRemoteAndCompare(gitFlowConfig.getProductionBranch());
             }
 
-            String[] branches = hotfixBranches.split("\\r?\\n");
-
-            List<String> numberedList = new ArrayList<String>();
-            StringBuilder str = new StringBuilder("Hotfix branches:")
-                    .append(LS);
-            for (int i = 0; i < branches.length; i++) {
-                str.append((i + 1) + ". " + branches[i] + LS);
-                numberedList.add(String.valueOf(i + 1));
+            if (!skipTag && !journal.isResumed()) {
+                // git for-each-ref refs/tags/...
+                checkVersionTagNotExists(getProjectVersion(hotfixBranchName));
             }
-            str.append("Choose hotfix branch to finish");
 
-            String hotfixNumber = null;
-            try {
-                while (StringUtils.isBlank(hotfixNumber)) {
-                    hotfixNumber = prompter
-                            .prompt(str.toString(), numberedList);
+            // check whether release branch exists
+            // git for-each-ref --count=1 --format="%(refname:short)"
+            // refs/heads/release/*
+            final String releaseBranch = gitFindBranches(
+                    gitFlowConfig.getReleaseBranchPrefix(), true);
+
+            final List<String> supportBranches = new ArrayList<String>();
+            if (mergeSupportBranches) {
+                // git for-each-ref refs/heads/support/*
+                final List<String> branches = gitListBranchesByDate(
+                        gitFlowConfig.getSupportBranchPrefix());
+
+                // the production branch can already contain the hotfix when
+                // resumed, the skipped branches are in the journal then
+                // git merge-base master hotfix/...
+                final String base = journal.isResumed() ? null
+                        : gitMergeBase(gitFlowConfig.getProductionBranch(),
+                                hotfixBranchName);
+                for (String supportBranch : branches) {
+                    if (journal.isDone("skip-" + supportBranch)) {
+                        continue;
+                    }
+                    // git merge-base --is-ancestor <base> support/...
+                    if (base != null && !gitIsAncestor(base, supportBranch)) {
+                        getLog().info(
+                                "Skipping '" + supportBranch
+                                        + "' branch, it doesn't contain the "
+                                        + "base of '" + hotfixBranchName
+                                        + "' branch.");
+                        gitJournalStep(journal, "skip-" + supportBranch,
+                                null, false);
+                        continue;
+                    }
+                    supportBranches.add(supportBranch);
                 }
-            } catch (PrompterException e) {
-                getLog().error(e);
             }
 
-            String hotfixBranchName = null;
-            if (hotfixNumber != null) {
-                int num = Integer.parseInt(hotfixNumber);
-                hotfixBranchName = branches[num - 1];
+            // all branches the hotfix is merged into
+            final List<String> targets = new ArrayList<String>();
+            if (!journal.isResumed()) {
+                targets.add(gitFlowConfig.getProductionBranch());
+                if (StringUtils.isNotBlank(releaseBranch)) {
+                    targets.add(releaseBranch);
+                } else if (notSameProdDevName()) {
+                    targets.add(gitFlowConfig.getDevelopmentBranch());
+                }
             }
-
-            if (StringUtils.isBlank(hotfixBranchName)) {
-                throw new MojoFailureException(
-                        "Hotfix branch name to finish is blank.");
+            for (String supportBranch : supportBranches) {
+                if (!journal.isDone("merge-" + supportBranch)) {
+                    targets.add(supportBranch);
+                }
             }
 
-            if (!skipTestProject) {
+            // check conflicts with all targets at once
+            // git merge-tree --write-tree master hotfix/...
+            final Map<String, TrialMerge> trialMerges = gitTrialMerge(
+                    hotfixBranchName, targets);
+
+            if (!skipTestProject && !journal.isDone("test")) {
                 // git checkout hotfix/...
                 gitCheckout(hotfixBranchName);
 
                 // mvn clean test
                 mvnCleanTest();
+
+                gitJournalStep(journal, "test", hotfixBranchName, false);
             }
 
             // git checkout master
             gitCheckout(gitFlowConfig.getProductionBranch());
 
-            // git merge --no-ff hotfix/...
-            gitMergeNoff(hotfixBranchName);
+            if (!journal.isDone("merge-production")) {
+                // git merge --no-ff hotfix/...
+                gitMergeNoff(hotfixBranchName);
+
+                gitJournalStep(journal, "merge-production",
+                        gitFlowConfig.getProductionBranch(), false);
+            }
 
-            if (!skipTag) {
-                String tagVersion = getCurrentProjectVersion();
-                if (tychoBuild && ArtifactUtils.isSnapshot(tagVersion)) {
-                    tagVersion = tagVersion.replace("-"
-                            + Artifact.SNAPSHOT_VERSION, "");
-                }
+            String tagVersion = getCurrentProjectVersion();
+            if (tychoBuild && ArtifactUtils.isSnapshot(tagVersion)) {
+                tagVersion = tagVersion.replace("-"
+                        + Artifact.SNAPSHOT_VERSION, "");
+            }
 
-                // git tag -a ...
-                gitTag(gitFlowConfig.getVersionTagPrefix() + tagVersion,
-                        commitMessages.getTagHotfixMessage());
+            if (!skipTag && !journal.isDone("refs")) {
+                final String tagName = gitFlowConfig.getVersionTagPrefix()
+                        + tagVersion;
+                if (!journal.isResumed() || !gitCheckTagExists(tagName)) {
+                    // git tag -a ...
+                    gitTag(tagName, commitMessages.getTagHotfixMessage());
+                }
             }
 
-            // check whether release branch exists
-            // git for-each-ref --count=1 --format="%(refname:short)"
-            // refs/heads/release/*
-            final String releaseBranch = gitFindBranches(
-                    gitFlowConfig.getReleaseBranchPrefix(), true);
+            // git log v1.0.0..master
+            startChangelog(tagVersion);
 
             // if release branch exists merge hotfix changes into it
             if (StringUtils.isNotBlank(releaseBranch)) {
                 // git checkout release
                 gitCheckout(releaseBranch);
-                // git merge --no-ff hotfix/...
-                gitMergeNoff(hotfixBranchName);
+
+                if (!journal.isDone("merge-release")) {
+                    // git merge --no-ff hotfix/...
+                    gitMergeNoff(hotfixBranchName);
+
+                    gitJournalStep(journal, "merge-release", releaseBranch,
+                            false);
+                }
             } else {
                 if (notSameProdDevName()) {
                     // git checkout develop
                     gitCheckout(gitFlowConfig.getDevelopmentBranch());
 
-                    // git merge --no-ff hotfix/...
-                    gitMergeNoff(hotfixBranchName);
-                }
+                    if (!journal.isDone("merge-development")) {
+                        // git merge --no-ff hotfix/...
+                        gitMergeNoff(hotfixBranchName);
 
-                // get current project version from pom
-                final String currentVersion = getCurrentProjectVersion();
-
-                String nextSnapshotVersion = null;
-                // get next snapshot version
-                try {
-                    final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                            currentVersion);
-                    nextSnapshotVersion = versionInfo.getNextVersion()
-                            .getSnapshotVersionString();
-                } catch (VersionParseException e) {
-                    if (getLog().isDebugEnabled()) {
-                        getLog().debug(e);
+                        gitJournalStep(journal, "merge-development",
+                                gitFlowConfig.getDevelopmentBranch(), false);
                     }
                 }
 
-                if (StringUtils.isBlank(nextSnapshotVersion)) {
-                    throw new MojoFailureException(
-                            "Next snapshot version is blank.");
+                if (!journal.isDone("versions")) {
+                    // get current project version from pom
+                    final String currentVersion = getCurrentProjectVersion();
+
+                    String nextSnapshotVersion = null;
+                    // get next snapshot version
+                    try {
+                        final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                                .parse(currentVersion);
+                        nextSnapshotVersion = versionInfo
+                                .getNextSnapshotVersionString();
+                    } catch (VersionParseException e) {
+                        if (getLog().isDebugEnabled()) {
+                            getLog().debug(e);
+                        }
+                    }
+
+                    if (StringUtils.isBlank(nextSnapshotVersion)) {
+                        throw new MojoFailureException(
+                                "Next snapshot version is blank.");
+                    }
+
+                    // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
+                    mvnSetVersions(nextSnapshotVersion);
+
+                    // git commit --only -m updating for next development version
+                    gitCommitVersionFiles(commitMessages
+                            .getHotfixFinishMessage());
+
+                    gitJournalStep(journal, "versions",
+                            gitFlowConfig.getDevelopmentBranch(), false);
                 }
+            }
 
-                // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
-                mvnSetVersions(nextSnapshotVersion);
+            boolean checkedOut = false;
+            for (String supportBranch : supportBranches) {
+                if (journal.isDone("merge-" + supportBranch)) {
+                    continue;
+                }
+                final TrialMerge merge = trialMerges.get(supportBranch);
+                // git commit-tree && git update-ref refs/heads/support/...
+                if (merge == null
+                        || !gitMergeDirect(supportBranch, hotfixBranchName,
+                                merge)) {
+                    // git checkout support/...
+                    gitCheckout(supportBranch);
+                    checkedOut = true;
 
-                // git commit -a -m updating for next development version
-                gitCommit(commitMessages.getHotfixFinishMessage());
+                    // git merge --no-ff hotfix/...
+                    gitMergeNoff(hotfixBranchName);
+                }
+                gitJournalStep(journal, "merge-" + supportBranch,
+                        supportBranch, false);
+            }
+            if (checkedOut) {
+                // git checkout release/... or develop
+                gitCheckout(StringUtils.isNotBlank(releaseBranch)
+                        ? releaseBranch
+                        : gitFlowConfig.getDevelopmentBranch());
             }
 
-            if (installProject) {
+            if (installProject && !journal.isDone("install")) {
                 // mvn clean install
                 mvnCleanInstall();
+
+                gitJournalStep(journal, "install", null, false);
             }
 
-            if (!keepBranch) {
-                // git branch -d hotfix/...
-                gitBranchDelete(hotfixBranchName);
+            if (!journal.isDone("refs")) {
+                if (!keepBranch) {
+                    // git branch -d hotfix/...
+                    gitBranchDelete(hotfixBranchName);
+                }
+
+                // git update-ref --stdin
+                gitCommitRefTransaction();
+
+                gitJournalStep(journal, "refs", keepBranch ? null
+                        : hotfixBranchName, true);
             }
 
             if (pushRemote) {
@@ -203,7 +358,18 @@ public class GitFlowHotfixFinishMojo extends AbstractGitFlowMojo {
                 if (StringUtils.isBlank(releaseBranch) && notSameProdDevName()) {
                     gitPush(gitFlowConfig.getDevelopmentBranch(), !skipTag);
                 }
+
+                for (String supportBranch : supportBranches) {
+                    gitPush(supportBranch, false);
+                }
             }
+
+            finishChangelog();
+
+            journal.delete();
+        } catch (MojoFailureException e) {
+            logResumeHint(journal);
+            throw e;
         } catch (CommandLineException e) {
             getLog().error(e);
         }
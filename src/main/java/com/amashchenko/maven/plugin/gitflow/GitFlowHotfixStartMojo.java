@@ -20,8 +20,7 @@ import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.apache.maven.shared.release.versions.DefaultVersionInfo;
-import org.apache.maven.shared.release.versions.VersionParseException;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
@@ -35,6 +34,26 @@ import org.codehaus.plexus.util.cli.CommandLineException;
 @Mojo(name = "hotfix-start", aggregator = true)
 public class GitFlowHotfixStartMojo extends AbstractGitFlowMojo {
 
+    /**
+     * Whether to create the hotfix branch and commit the version change directly
+     * in the Git object database, w/o checking out the branch. Not supported
+     * for Tycho builds.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "directCommit", defaultValue = "false")
+    private boolean directCommit = false;
+
+    /**
+     * Whether to check out the created branch at the end when
+     * <code>directCommit</code> is used. The branch is always checked out if
+     * <code>installProject</code> is <code>true</code>.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "checkoutBranch", defaultValue = "false")
+    private boolean checkoutBranch = false;
+
     /** {@inheritDoc} */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -45,27 +64,31 @@ public class GitFlowHotfixStartMojo extends AbstractGitFlowMojo {
             // check uncommitted changes
             checkUncommittedChanges();
 
-            // need to be in master to get correct project version
-            // git checkout master
-            gitCheckout(gitFlowConfig.getProductionBranch());
-
-            // fetch and check remote
-            if (fetchRemote) {
-                gitFetchRemoteAndCompare(gitFlowConfig.getProductionBranch());
-            }
+            // fetch remote while the version is chosen
+            gitStartPrefetch(gitFlowConfig.getProductionBranch());
 
-            // get current project version from pom
-            final String currentVersion = getCurrentProjectVersion();
+            // get current project version from pom of master w/o checking it
+            // out
+            // git cat-file --batch master:pom.xml
+            final String currentVersion = getProjectVersion(gitFlowConfig
+                    .getProductionBranch());
 
             String defaultVersion = null;
             // get default hotfix version
             try {
-                final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                        currentVersion);
-                defaultVersion = versionInfo.getNextVersion()
-                        .getReleaseVersionString();
+                final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                        .parse(currentVersion);
+                defaultVersion = versionInfo.getHotfixVersionString();
+
+                // skip versions which are already tagged
+                // git for-each-ref refs/tags/...
+                if (defaultVersion != null) {
+                    defaultVersion = getVersionTagIndex().getFreeVersion(
+                            defaultVersion);
+                }
 
-                if (tychoBuild && ArtifactUtils.isSnapshot(currentVersion)) {
+                if (defaultVersion != null && tychoBuild
+                        && ArtifactUtils.isSnapshot(currentVersion)) {
                     defaultVersion += "-" + Artifact.SNAPSHOT_VERSION;
                 }
             } catch (VersionParseException e) {
@@ -98,6 +121,14 @@ public class GitFlowHotfixStartMojo extends AbstractGitFlowMojo {
                 version = defaultVersion;
             }
 
+            // check remote
+            if (fetchRemote) {
+                gitFetchRemoteAndCompare(gitFlowConfig.getProductionBranch());
+            }
+
+            // git for-each-ref refs/tags/...
+            checkVersionTagNotExists(version);
+
             // git for-each-ref refs/heads/hotfix/...
             final boolean hotfixBranchExists = gitCheckBranchExists(gitFlowConfig
                     .getHotfixBranchPrefix() + version);
@@ -107,17 +138,40 @@ public class GitFlowHotfixStartMojo extends AbstractGitFlowMojo {
                         "Hotfix branch with that name already exists. Cannot start hotfix.");
             }
 
-            // git checkout -b hotfix/... master
-            gitCreateAndCheckout(gitFlowConfig.getHotfixBranchPrefix()
-                    + version, gitFlowConfig.getProductionBranch());
-
-            // execute if version changed
-            if (!version.equals(currentVersion)) {
-                // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
-                mvnSetVersions(version);
+            final String branchName = gitFlowConfig.getHotfixBranchPrefix()
+                    + version;
+
+            if (directCommit && !tychoBuild) {
+                if (!version.equals(currentVersion)) {
+                    // git fast-import
+                    gitCreateBranchWithVersion(branchName,
+                            gitFlowConfig.getProductionBranch(), version,
+                            commitMessages.getHotfixStartMessage());
+                } else {
+                    // git branch hotfix/... master
+                    gitCreateBranch(branchName,
+                            gitFlowConfig.getProductionBranch());
+                }
 
-                // git commit -a -m updating versions for hotfix
-                gitCommit(commitMessages.getHotfixStartMessage());
+                if (checkoutBranch || installProject) {
+                    // git checkout hotfix/...
+                    gitCheckout(branchName);
+                }
+            } else {
+                // git checkout -b hotfix/... master
+                gitCreateAndCheckout(branchName,
+                        gitFlowConfig.getProductionBranch());
+
+                // execute if version changed
+                if (!version.equals(currentVersion)) {
+                    // mvn versions:set -DnewVersion=...
+                    // -DgenerateBackupPoms=false
+                    mvnSetVersions(version);
+
+                    // git commit --only -m updating versions for hotfix
+                    gitCommitVersionFiles(commitMessages
+                            .getHotfixStartMessage());
+                }
             }
 
             if (installProject) {
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal of the completed steps of a goal execution. Each step is appended
+ * to the file as soon as it is completed, together with the reference it
+ * changed and its resulting object name, so a failed execution can be
+ * resumed w/o repeating the completed steps.
+ * <p>
+ * Format of the file is one entry per line: <code>branch &lt;name&gt;</code>
+ * followed by <code>done &lt;step&gt; [&lt;ref&gt; &lt;sha&gt;]</code> lines,
+ * where <code>-</code> sha means the reference was deleted.
+ * </p>
+ * 
+ */
+public class GitFlowJournal {
+    /** Object name of the deleted reference. */
+    private static final String DELETED = "-";
+
+    /** Journal file. */
+    private final File file;
+    /** Branch the goal is executed for. */
+    private String branch;
+    /** Whether the journal was loaded from a failed execution. */
+    private boolean resumed;
+    /** Completed steps. */
+    private final List<String> steps = new ArrayList<String>();
+    /** Last object names of the changed references. */
+    private final Map<String, String> refs = new LinkedHashMap<String, String>();
+
+    /**
+     * Creates journal.
+     * 
+     * @param file
+     *            Journal file.
+     */
+    public GitFlowJournal(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads journal of a failed execution.
+     * 
+     * @return <code>true</code> if the journal exists.
+     * @throws IOException
+     */
+    public boolean load() throws IOException {
+        if (!file.isFile()) {
+            return false;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.trim().split(" ");
+                if (parts.length == 2 && "branch".equals(parts[0])) {
+                    branch = parts[1];
+                } else if (parts.length >= 2 && "done".equals(parts[0])) {
+                    steps.add(parts[1]);
+                    if (parts.length == 4) {
+                        refs.put(parts[2], parts[3]);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        resumed = branch != null;
+        return resumed;
+    }
+
+    /**
+     * Starts new journal, replacing the existing one.
+     * 
+     * @param branchName
+     *            Branch the goal is executed for.
+     * @throws IOException
+     */
+    public void start(final String branchName) throws IOException {
+        branch = branchName;
+        resumed = false;
+        steps.clear();
+        refs.clear();
+        write("branch " + branchName, false);
+    }
+
+    /**
+     * Records completed step which doesn't change references.
+     * 
+     * @param step
+     *            Step name.
+     * @throws IOException
+     */
+    public void done(final String step) throws IOException {
+        steps.add(step);
+        write("done " + step, true);
+    }
+
+    /**
+     * Records completed step.
+     * 
+     * @param step
+     *            Step name.
+     * @param ref
+     *            Full name of the reference changed by the step.
+     * @param sha
+     *            Object name of the reference after the step or
+     *            <code>null</code> if the reference was deleted.
+     * @throws IOException
+     */
+    public void done(final String step, final String ref, final String sha)
+            throws IOException {
+        final String value = sha == null ? DELETED : sha;
+        steps.add(step);
+        refs.put(ref, value);
+        write("done " + step + " " + ref + " " + value, true);
+    }
+
+    /**
+     * @param step
+     *            Step name.
+     * @return <code>true</code> if the step is completed
+     */
+    public boolean isDone(final String step) {
+        return steps.contains(step);
+    }
+
+    /**
+     * @return the completed steps
+     */
+    public List<String> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Gets last object names of the references changed by the completed
+     * steps.
+     * 
+     * @return Object names by reference, <code>null</code> for the deleted
+     *         references.
+     */
+    public Map<String, String> getRefs() {
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            result.put(ref.getKey(),
+                    DELETED.equals(ref.getValue()) ? null : ref.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * @return the branch the goal is executed for
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return <code>true</code> if the journal was loaded from a failed
+     *         execution
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Deletes journal file after successful execution.
+     */
+    public void delete() {
+        if (file.isFile() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void write(final String line, final boolean append)
+            throws IOException {
+        final File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory '" + dir + "'.");
+        }
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(
+                file, append), "UTF-8");
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * The git flow orchestrate mojo. Executes git flow goal in several
+ * repositories in parallel, respecting the dependencies between them.
+ * 
+ */
+@Mojo(name = "orchestrate", aggregator = true, requiresProject = false)
+public class GitFlowOrchestrateMojo extends AbstractGitFlowMojo {
+
+    /**
+     * Git flow goal to execute in each repository, e.g.
+     * <code>release-start</code>.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "goal", required = true)
+    private String goal;
+
+    /**
+     * Additional arguments of the goal execution, e.g.
+     * <code>-DpushRemote=false</code>. Goals are executed in batch mode.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "goalArguments")
+    private String goalArguments;
+
+    /**
+     * Comma separated directories of the repositories.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "repositories")
+    private String repositories;
+
+    /**
+     * File listing the repositories, one directory per line, relative to the
+     * file. Directory can be followed by a colon and comma separated names
+     * of the repositories which must be finished first, e.g.
+     * <code>web: core, api</code>. The colon of a Windows drive letter, e.g.
+     * <code>C:\web: core</code>, is not a separator. Lines starting with
+     * <code>#</code> are ignored.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "manifest")
+    private File manifest;
+
+    /**
+     * Maximum number of repositories processed at once.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "threads", defaultValue = "4")
+    private int threads = 4;
+
+    /**
+     * Directory of the report and of the output logs of each repository.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "reportDirectory", defaultValue = "${session.executionRootDirectory}/target/gitflow-orchestrate")
+    private File reportDirectory;
+
+    /** {@inheritDoc} */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final MultiRepositoryOrchestrator orchestrator = new MultiRepositoryOrchestrator();
+        try {
+            if (StringUtils.isNotBlank(repositories)) {
+                for (String dir : repositories.split(",")) {
+                    if (StringUtils.isNotBlank(dir)) {
+                        addRepository(orchestrator, new File(dir.trim()));
+                    }
+                }
+            }
+            if (manifest != null) {
+                readManifest(orchestrator);
+            }
+            if (orchestrator.getRepositories().isEmpty()) {
+                throw new MojoFailureException(
+                        "No repositories. Set `repositories` or `manifest` parameter.");
+            }
+
+            orchestrator.linkByArtifacts();
+        } catch (IOException e) {
+            throw new MojoFailureException("Cannot read repositories.", e);
+        } catch (XmlPullParserException e) {
+            throw new MojoFailureException("Cannot read repositories.", e);
+        }
+
+        final List<String> unresolvable = orchestrator.findUnresolvable();
+        if (!unresolvable.isEmpty()) {
+            throw new MojoFailureException(
+                    "Cyclic or unknown dependencies of repositories: "
+                            + StringUtils.join(unresolvable.iterator(), ", "));
+        }
+
+        final List<String> args = new ArrayList<String>();
+        args.add("-B");
+        args.add(goal.contains(":") ? goal : "gitflow:" + goal);
+        if (StringUtils.isNotBlank(goalArguments)) {
+            try {
+                for (String arg : CommandLineUtils
+                        .translateCommandline(goalArguments)) {
+                    args.add(arg);
+                }
+            } catch (Exception e) {
+                throw new MojoFailureException("Cannot parse goal arguments.",
+                        e);
+            }
+        }
+
+        if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+            throw new MojoFailureException("Cannot create directory '"
+                    + reportDirectory + "'.");
+        }
+
+        getLog().info(
+                "Executing " + StringUtils.join(args.iterator(), " ") + " in "
+                        + orchestrator.getRepositories().size()
+                        + " repositories.");
+
+        try {
+            orchestrator.execute(new MultiRepositoryOrchestrator.Task() {
+                @Override
+                public boolean execute(
+                        final MultiRepositoryOrchestrator.Repository repository)
+                        throws Exception {
+                    return executeGoal(repository, args);
+                }
+            }, threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoFailureException("Interrupted.", e);
+        }
+
+        report(orchestrator.getRepositories());
+    }
+
+    /**
+     * Executes goal in the repository.
+     * 
+     * @param repository
+     *            Repository.
+     * @param args
+     *            Maven arguments.
+     * @return <code>true</code> if the goal succeeded.
+     * @throws Exception
+     */
+    private boolean executeGoal(
+            final MultiRepositoryOrchestrator.Repository repository,
+            final List<String> args) throws Exception {
+        getLog().info("[" + repository.getName() + "] started.");
+        final PrintWriter log = new PrintWriter(new FileWriter(new File(
+                reportDirectory, repository.getName() + ".log")));
+        try {
+            final int exitCode = executeMvnCommandIn(
+                    repository.getDirectory(), new StreamConsumer() {
+                        @Override
+                        public void consumeLine(String line) {
+                            synchronized (log) {
+                                log.println(line);
+                            }
+                            if (verbose) {
+                                getLog().info(
+                                        "[" + repository.getName() + "] "
+                                                + line);
+                            }
+                        }
+                    }, args.toArray(new String[args.size()]));
+            getLog().info(
+                    "[" + repository.getName() + "] finished with exit code "
+                            + exitCode + ".");
+            return exitCode == 0;
+        } finally {
+            log.close();
+        }
+    }
+
+    /**
+     * Reads repositories from the manifest file.
+     * 
+     * @param orchestrator
+     *            Orchestrator to add repositories to.
+     * @throws IOException
+     * @throws MojoFailureException
+     */
+    private void readManifest(final MultiRepositoryOrchestrator orchestrator)
+            throws IOException, MojoFailureException {
+        final File base = manifest.getAbsoluteFile().getParentFile();
+        final BufferedReader reader = new BufferedReader(new FileReader(
+                manifest));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                final int colon = indexOfSeparator(line);
+                final String dir = colon < 0 ? line : line.substring(0, colon)
+                        .trim();
+                final MultiRepositoryOrchestrator.Repository repository = addRepository(
+                        orchestrator, new File(base, dir));
+                if (colon >= 0) {
+                    for (String name : line.substring(colon + 1).split(",")) {
+                        if (StringUtils.isNotBlank(name)) {
+                            repository.addUpstream(name.trim());
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Finds the colon separating the directory from the names of the
+     * repositories in the manifest line. The colon of a Windows drive letter,
+     * e.g. <code>C:\projects\web</code>, is not a separator.
+     * 
+     * @param line
+     *            Manifest line.
+     * @return Index of the separator or <code>-1</code> if there is none.
+     */
+    static int indexOfSeparator(final String line) {
+        int from = 0;
+        if (line.length() > 2 && Character.isLetter(line.charAt(0))
+                && line.charAt(1) == ':'
+                && (line.charAt(2) == '\\' || line.charAt(2) == '/')) {
+            from = 2;
+        }
+        return line.indexOf(':', from);
+    }
+
+    private MultiRepositoryOrchestrator.Repository addRepository(
+            final MultiRepositoryOrchestrator orchestrator, final File dir)
+            throws IOException, MojoFailureException {
+        final File directory = dir.getCanonicalFile();
+        if (!new File(directory, "pom.xml").isFile()) {
+            throw new MojoFailureException("There is no pom.xml in '"
+                    + directory + "'.");
+        }
+        final String name = directory.getName();
+        for (MultiRepositoryOrchestrator.Repository r : orchestrator
+                .getRepositories()) {
+            if (r.getName().equals(name)) {
+                throw new MojoFailureException("Duplicate repository name '"
+                        + name + "'.");
+            }
+        }
+        return orchestrator.addRepository(name, directory);
+    }
+
+    /**
+     * Logs and writes the report.
+     * 
+     * @param results
+     *            Repositories with results.
+     * @throws MojoFailureException
+     *             If goal didn't succeed in any repository.
+     */
+    private void report(
+            final List<MultiRepositoryOrchestrator.Repository> results)
+            throws MojoFailureException {
+        final List<String> lines = new ArrayList<String>();
+        int failed = 0;
+        for (MultiRepositoryOrchestrator.Repository r : results) {
+            String line = r.getName() + " " + r.getStatus();
+            if (r.getStatus() != MultiRepositoryOrchestrator.Status.SKIPPED) {
+                line += " " + (r.getDuration() / 1000.0) + " s";
+            }
+            if (r.getError() != null) {
+                line += " " + r.getError().getMessage();
+            }
+            if (r.getStatus() != MultiRepositoryOrchestrator.Status.SUCCESS) {
+                failed++;
+            }
+            lines.add(line);
+        }
+
+        getLog().info("Report:");
+        for (String line : lines) {
+            getLog().info("  " + line);
+        }
+
+        final File reportFile = new File(reportDirectory, "report.txt");
+        try {
+            final PrintWriter writer = new PrintWriter(new FileWriter(
+                    reportFile));
+            try {
+                for (String line : lines) {
+                    writer.println(line);
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            getLog().warn("Cannot write report '" + reportFile + "'.");
+        }
+
+        if (failed > 0) {
+            throw new MojoFailureException(failed + " of " + results.size()
+                    + " repositories didn't succeed, see logs in '"
+                    + reportDirectory + "'.");
+        }
+    }
+}
@@ -15,14 +15,15 @@
  */
 package com.amashchenko.maven.plugin.gitflow;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.shared.release.versions.DefaultVersionInfo;
-import org.apache.maven.shared.release.versions.VersionParseException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
 
@@ -76,28 +77,53 @@ public class GitFlowReleaseFinishMojo extends AbstractGitFlowMojo {
     @Parameter(property = "releaseMergeFFOnly", defaultValue = "false")
     private boolean releaseMergeFFOnly = false;
 
+    /**
+     * Whether to resume the failed execution of the goal. Steps completed by
+     * the failed execution, e.g. tests and merges, are not repeated.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "resume", defaultValue = "false")
+    private boolean resume = false;
+
     /** {@inheritDoc} */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        GitFlowJournal journal = null;
         try {
             // check uncommitted changes
             checkUncommittedChanges();
 
+            // collect tag and branch changes, applied before pushing
+            gitStartRefTransaction();
+
             // check snapshots dependencies
             if (!allowSnapshots) {
                 checkSnapshotDependencies();
             }
 
-            // git for-each-ref --format='%(refname:short)' refs/heads/release/*
-            final String releaseBranch = gitFindBranches(
-                    gitFlowConfig.getReleaseBranchPrefix(), false).trim();
+            // .git/gitflow/release-finish.journal
+            journal = gitOpenJournal("release-finish", resume);
+
+            final String releaseBranch;
+            if (journal.isResumed()) {
+                releaseBranch = journal.getBranch();
+            } else {
+                // git for-each-ref --format='%(refname:short)'
+                // refs/heads/release/*
+                releaseBranch = gitFindBranches(
+                        gitFlowConfig.getReleaseBranchPrefix(), false).trim();
 
-            if (StringUtils.isBlank(releaseBranch)) {
-                throw new MojoFailureException("There is no release branch.");
-            } else if (StringUtils.countMatches(releaseBranch,
-                    gitFlowConfig.getReleaseBranchPrefix()) > 1) {
-                throw new MojoFailureException(
-                        "More than one release branch exists. Cannot finish release.");
+                if (StringUtils.isBlank(releaseBranch)) {
+                    throw new MojoFailureException(
+                            "There is no release branch.");
+                } else if (StringUtils.countMatches(releaseBranch,
+                        gitFlowConfig.getReleaseBranchPrefix()) > 1) {
+                    throw new MojoFailureException(
+                            "More than one release branch exists. Cannot finish release.");
+                }
+
+                startJournal(journal, releaseBranch);
             }
 
             // fetch and check remote
@@ -109,75 +135,125 @@ public class GitFlowReleaseFinishMojo extends AbstractGitFlowMojo {
                 gitFetchRemoteAndCompare(gitFlowConfig.getProductionBranch());
             }
 
-            if (!skipTestProject) {
+            if (!skipTag && !journal.isResumed()) {
+                // git for-each-ref refs/tags/...
+                checkVersionTagNotExists(getProjectVersion(releaseBranch));
+            }
+
+            if (!journal.isResumed() && !releaseRebase) {
+                final List<String> targets = new ArrayList<String>();
+                targets.add(gitFlowConfig.getProductionBranch());
+                if (notSameProdDevName()) {
+                    targets.add(gitFlowConfig.getDevelopmentBranch());
+                }
+
+                // check conflicts before testing
+                // git merge-tree --write-tree master release/...
+                gitTrialMerge(releaseBranch, targets);
+            }
+
+            if (!skipTestProject && !journal.isDone("test")) {
                 // git checkout release/...
                 gitCheckout(releaseBranch);
 
                 // mvn clean test
                 mvnCleanTest();
+
+                gitJournalStep(journal, "test", releaseBranch, false);
             }
 
             // git checkout master
             gitCheckout(gitFlowConfig.getProductionBranch());
 
-            gitMerge(releaseBranch, releaseRebase, releaseMergeNoFF,
-                    releaseMergeFFOnly);
+            if (!journal.isDone("merge-production")) {
+                gitMerge(releaseBranch, releaseRebase, releaseMergeNoFF,
+                        releaseMergeFFOnly);
+
+                gitJournalStep(journal, "merge-production",
+                        gitFlowConfig.getProductionBranch(), false);
+            }
 
             // get current project version from pom
             final String currentVersion = getCurrentProjectVersion();
 
-            if (!skipTag) {
-                String tagVersion = currentVersion;
-                if (tychoBuild && ArtifactUtils.isSnapshot(currentVersion)) {
-                    tagVersion = currentVersion.replace("-"
-                            + Artifact.SNAPSHOT_VERSION, "");
-                }
+            String tagVersion = currentVersion;
+            if (tychoBuild && ArtifactUtils.isSnapshot(currentVersion)) {
+                tagVersion = currentVersion.replace("-"
+                        + Artifact.SNAPSHOT_VERSION, "");
+            }
 
-                // git tag -a ...
-                gitTag(gitFlowConfig.getVersionTagPrefix() + tagVersion,
-                        commitMessages.getTagReleaseMessage());
+            if (!skipTag && !journal.isDone("refs")) {
+                final String tagName = gitFlowConfig.getVersionTagPrefix()
+                        + tagVersion;
+                if (!journal.isResumed() || !gitCheckTagExists(tagName)) {
+                    // git tag -a ...
+                    gitTag(tagName, commitMessages.getTagReleaseMessage());
+                }
             }
 
+            // git log v1.0.0..master
+            startChangelog(tagVersion);
+
             if (notSameProdDevName()) {
                 // git checkout develop
                 gitCheckout(gitFlowConfig.getDevelopmentBranch());
 
-                gitMerge(releaseBranch, releaseRebase, releaseMergeNoFF,
-                        releaseMergeFFOnly);
-            }
+                if (!journal.isDone("merge-development")) {
+                    gitMerge(releaseBranch, releaseRebase, releaseMergeNoFF,
+                            releaseMergeFFOnly);
 
-            String nextSnapshotVersion = null;
-            // get next snapshot version
-            try {
-                final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                        currentVersion);
-                nextSnapshotVersion = versionInfo.getNextVersion()
-                        .getSnapshotVersionString();
-            } catch (VersionParseException e) {
-                if (getLog().isDebugEnabled()) {
-                    getLog().debug(e);
+                    gitJournalStep(journal, "merge-development",
+                            gitFlowConfig.getDevelopmentBranch(), false);
                 }
             }
 
-            if (StringUtils.isBlank(nextSnapshotVersion)) {
-                throw new MojoFailureException(
-                        "Next snapshot version is blank.");
-            }
+            if (!journal.isDone("versions")) {
+                String nextSnapshotVersion = null;
+                // get next snapshot version
+                try {
+                    final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                            .parse(currentVersion);
+                    nextSnapshotVersion = versionInfo
+                            .getNextSnapshotVersionString();
+                } catch (VersionParseException e) {
+                    if (getLog().isDebugEnabled()) {
+                        getLog().debug(e);
+                    }
+                }
 
-            // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
-            mvnSetVersions(nextSnapshotVersion);
+                if (StringUtils.isBlank(nextSnapshotVersion)) {
+                    throw new MojoFailureException(
+                            "Next snapshot version is blank.");
+                }
+
+                // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
+                mvnSetVersions(nextSnapshotVersion);
 
-            // git commit -a -m updating for next development version
-            gitCommit(commitMessages.getReleaseFinishMessage());
+                // git commit --only -m updating for next development version
+                gitCommitVersionFiles(commitMessages.getReleaseFinishMessage());
 
-            if (installProject) {
+                gitJournalStep(journal, "versions",
+                        gitFlowConfig.getDevelopmentBranch(), false);
+            }
+
+            if (installProject && !journal.isDone("install")) {
                 // mvn clean install
                 mvnCleanInstall();
+
+                gitJournalStep(journal, "install", null, false);
             }
 
-            if (!keepBranch) {
-                // git branch -d release/...
-                gitBranchDelete(releaseBranch);
+            if (!journal.isDone("refs")) {
+                if (!keepBranch) {
+                    // git branch -d release/...
+                    gitBranchDelete(releaseBranch);
+                }
+
+                // git update-ref --stdin
+                gitCommitRefTransaction();
+
+                gitJournalStep(journal, "refs", keepBranch ? null
+                        : releaseBranch, true);
             }
 
             if (pushRemote) {
@@ -186,6 +262,13 @@ public class GitFlowReleaseFinishMojo extends AbstractGitFlowMojo {
                     gitPush(gitFlowConfig.getDevelopmentBranch(), !skipTag);
                 }
             }
+
+            finishChangelog();
+
+            journal.delete();
+        } catch (MojoFailureException e) {
+            logResumeHint(journal);
+            throw e;
         } catch (CommandLineException e) {
             getLog().error(e);
         }
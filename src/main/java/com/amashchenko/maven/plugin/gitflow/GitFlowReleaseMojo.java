@@ -15,14 +15,14 @@
  */
 package com.amashchenko.maven.plugin.gitflow;
 
+import java.util.Collections;
+
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.shared.release.versions.DefaultVersionInfo;
-import org.apache.maven.shared.release.versions.VersionParseException;
 import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
@@ -92,6 +92,9 @@ public class GitFlowReleaseMojo extends AbstractGitFlowMojo {
             // check uncommitted changes
             checkUncommittedChanges();
 
+            // collect tag and branch changes, applied before pushing
+            gitStartRefTransaction();
+
             // check snapshots dependencies
             if (!allowSnapshots) {
                 checkSnapshotDependencies();
@@ -115,17 +118,11 @@ public class GitFlowReleaseMojo extends AbstractGitFlowMojo {
                         "Release branch already exists. Cannot start release.");
             }
 
-            // need to be in develop to get correct project version
-            // git checkout develop
-            gitCheckout(gitFlowConfig.getDevelopmentBranch());
-
-            if (!skipTestProject) {
-                // mvn clean test
-                mvnCleanTest();
-            }
-
-            // get current project version from pom
-            final String currentVersion = getCurrentProjectVersion();
+            // get current project version from pom of develop w/o checking
+            // it out
+            // git cat-file --batch develop:pom.xml
+            final String currentVersion = getProjectVersion(gitFlowConfig
+                    .getDevelopmentBranch());
 
             String defaultVersion = null;
             if (tychoBuild) {
@@ -133,8 +130,8 @@ public class GitFlowReleaseMojo extends AbstractGitFlowMojo {
             } else {
                 // get default release version
                 try {
-                    final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                            currentVersion);
+                    final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                            .parse(currentVersion);
                     defaultVersion = versionInfo.getReleaseVersionString();
                 } catch (VersionParseException e) {
                     if (getLog().isDebugEnabled()) {
@@ -172,13 +169,35 @@ public class GitFlowReleaseMojo extends AbstractGitFlowMojo {
                 version = defaultVersion;
             }
 
+            if (!skipTag) {
+                // git for-each-ref refs/tags/...
+                checkVersionTagNotExists(version);
+            }
+
+            if (notSameProdDevName() && !releaseRebase) {
+                // check conflicts before testing
+                // git merge-tree --write-tree master develop
+                gitTrialMerge(gitFlowConfig.getDevelopmentBranch(),
+                        Collections.singletonList(gitFlowConfig
+                                .getProductionBranch()));
+            }
+
+            // need to be in develop to test and update versions
+            // git checkout develop
+            gitCheckout(gitFlowConfig.getDevelopmentBranch());
+
+            if (!skipTestProject) {
+                // mvn clean test
+                mvnCleanTest();
+            }
+
             // execute if version changed
             if (!version.equals(currentVersion)) {
                 // mvn set version
                 mvnSetVersions(version);
 
-                // git commit -a -m updating versions for release
-                gitCommit(commitMessages.getReleaseStartMessage());
+                // git commit --only -m updating versions for release
+                gitCommitVersionFiles(commitMessages.getReleaseStartMessage());
             }
 
             if (notSameProdDevName()) {
@@ -208,10 +227,10 @@ public class GitFlowReleaseMojo extends AbstractGitFlowMojo {
             String nextSnapshotVersion = null;
             // get next snapshot version
             try {
-                final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                        version);
-                nextSnapshotVersion = versionInfo.getNextVersion()
-                        .getSnapshotVersionString();
+                final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                        .parse(version);
+                nextSnapshotVersion = versionInfo
+                        .getNextSnapshotVersionString();
             } catch (VersionParseException e) {
                 if (getLog().isDebugEnabled()) {
                     getLog().debug(e);
@@ -226,14 +245,17 @@ public class GitFlowReleaseMojo extends AbstractGitFlowMojo {
             // mvn set version
             mvnSetVersions(nextSnapshotVersion);
 
-            // git commit -a -m updating for next development version
-            gitCommit(commitMessages.getReleaseFinishMessage());
+            // git commit --only -m updating for next development version
+            gitCommitVersionFiles(commitMessages.getReleaseFinishMessage());
 
             if (installProject) {
                 // mvn clean install
                 mvnCleanInstall();
             }
 
+            // git update-ref --stdin
+            gitCommitRefTransaction();
+
             if (pushRemote) {
                 gitPush(gitFlowConfig.getProductionBranch(), !skipTag);
                 if (notSameProdDevName()) {
@@ -19,8 +19,6 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.shared.release.versions.DefaultVersionInfo;
-import org.apache.maven.shared.release.versions.VersionParseException;
 import org.codehaus.plexus.components.interactivity.PrompterException;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineException;
@@ -58,6 +56,26 @@ public class GitFlowReleaseStartMojo extends AbstractGitFlowMojo {
     @Parameter(property = "releaseVersion", defaultValue = "")
     private String releaseVersion = "";
 
+    /**
+     * Whether to create the release branch and commit the version change directly
+     * in the Git object database, w/o checking out the branch. Not supported
+     * for Tycho builds.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "directCommit", defaultValue = "false")
+    private boolean directCommit = false;
+
+    /**
+     * Whether to check out the created branch at the end when
+     * <code>directCommit</code> is used. The branch is always checked out if
+     * <code>installProject</code> is <code>true</code>.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "checkoutBranch", defaultValue = "false")
+    private boolean checkoutBranch = false;
+
     /** {@inheritDoc} */
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
@@ -68,6 +86,10 @@ public class GitFlowReleaseStartMojo extends AbstractGitFlowMojo {
             // check uncommitted changes
             checkUncommittedChanges();
 
+            // fetch remote while dependencies are checked and the version
+            // is chosen
+            gitStartPrefetch(gitFlowConfig.getDevelopmentBranch());
+
             // check snapshots dependencies
             if (!allowSnapshots) {
                 checkSnapshotDependencies();
@@ -82,17 +104,11 @@ public class GitFlowReleaseStartMojo extends AbstractGitFlowMojo {
                         "Release branch already exists. Cannot start release.");
             }
 
-            // fetch and check remote
-            if (fetchRemote) {
-                gitFetchRemoteAndCompare(gitFlowConfig.getDevelopmentBranch());
-            }
-
-            // need to be in develop to get correct project version
-            // git checkout develop
-            gitCheckout(gitFlowConfig.getDevelopmentBranch());
-
-            // get current project version from pom
-            final String currentVersion = getCurrentProjectVersion();
+            // get current project version from pom of develop w/o checking
+            // it out
+            // git cat-file --batch develop:pom.xml
+            final String currentVersion = getProjectVersion(gitFlowConfig
+                    .getDevelopmentBranch());
 
             String defaultVersion = null;
             if (tychoBuild) {
@@ -100,8 +116,8 @@ public class GitFlowReleaseStartMojo extends AbstractGitFlowMojo {
             } else {
                 // get default release version
                 try {
-                    final DefaultVersionInfo versionInfo = new DefaultVersionInfo(
-                            currentVersion);
+                    final GitFlowVersionInfo versionInfo = GitFlowVersionInfo
+                            .parse(currentVersion);
                     defaultVersion = versionInfo.getReleaseVersionString();
                 } catch (VersionParseException e) {
                     if (getLog().isDebugEnabled()) {
@@ -139,22 +155,50 @@ public class GitFlowReleaseStartMojo extends AbstractGitFlowMojo {
                 version = defaultVersion;
             }
 
+            // check remote
+            if (fetchRemote) {
+                gitFetchRemoteAndCompare(gitFlowConfig.getDevelopmentBranch());
+            }
+
+            // git for-each-ref refs/tags/...
+            checkVersionTagNotExists(version);
+
             String branchName = gitFlowConfig.getReleaseBranchPrefix();
             if (!sameBranchName) {
                 branchName += version;
             }
 
-            // git checkout -b release/... develop
-            gitCreateAndCheckout(branchName,
-                    gitFlowConfig.getDevelopmentBranch());
-
-            // execute if version changed
-            if (!version.equals(currentVersion)) {
-                // mvn versions:set -DnewVersion=... -DgenerateBackupPoms=false
-                mvnSetVersions(version);
+            if (directCommit && !tychoBuild) {
+                if (!version.equals(currentVersion)) {
+                    // git fast-import
+                    gitCreateBranchWithVersion(branchName,
+                            gitFlowConfig.getDevelopmentBranch(), version,
+                            commitMessages.getReleaseStartMessage());
+                } else {
+                    // git branch release/... develop
+                    gitCreateBranch(branchName,
+                            gitFlowConfig.getDevelopmentBranch());
+                }
 
-                // git commit -a -m updating versions for release
-                gitCommit(commitMessages.getReleaseStartMessage());
+                if (checkoutBranch || installProject) {
+                    // git checkout release/...
+                    gitCheckout(branchName);
+                }
+            } else {
+                // git checkout -b release/... develop
+                gitCreateAndCheckout(branchName,
+                        gitFlowConfig.getDevelopmentBranch());
+
+                // execute if version changed
+                if (!version.equals(currentVersion)) {
+                    // mvn versions:set -DnewVersion=...
+                    // -DgenerateBackupPoms=false
+                    mvnSetVersions(version);
+
+                    // git commit --only -m updating versions for release
+                    gitCommitVersionFiles(commitMessages
+                            .getReleaseStartMessage());
+                }
             }
 
             if (installProject) {
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.components.interactivity.PrompterException;
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.cli.CommandLineException;
+
+/**
+ * The git flow support start mojo. Creates support branch from the version
+ * tag. The commit with the updated versions is written directly into the Git
+ * object database, so the old tree is not checked out.
+ * 
+ */
+@Mojo(name = "support-start", aggregator = true)
+public class GitFlowSupportStartMojo extends AbstractGitFlowMojo {
+
+    /**
+     * Version tag to start the support branch from, with or w/o the version
+     * tag prefix. If not set the tag is chosen interactively.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "tagName")
+    private String tagName;
+
+    /**
+     * Name of the support branch w/o the support branch prefix. If not set
+     * the name is prompted, the default is the tag name w/o the version tag
+     * prefix.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "supportName")
+    private String supportName;
+
+    /**
+     * Project version of the support branch. If not set the version is
+     * prompted, the default is the next SNAPSHOT version of the tag.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "supportVersion")
+    private String supportVersion;
+
+    /**
+     * Whether to check out the created branch at the end. The branch is
+     * always checked out if <code>installProject</code> is <code>true</code>.
+     * 
+     * @since 1.4.1
+     */
+    @Parameter(property = "checkoutBranch", defaultValue = "false")
+    private boolean checkoutBranch = false;
+
+    /** {@inheritDoc} */
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            // set git flow configuration
+            initGitFlowConfig();
+
+            // fetch and check remote
+            if (fetchRemote) {
+                gitFetchRemoteAndCompare(gitFlowConfig.getProductionBranch());
+            }
+
+            // git for-each-ref --sort=-creatordate refs/tags/...
+            final List<String> tags = gitListTagsByDate(gitFlowConfig
+                    .getVersionTagPrefix());
+
+            if (tags.isEmpty()) {
+                throw new MojoFailureException("There are no version tags.");
+            }
+
+            final String tag = selectTag(tags);
+
+            // get project version from pom of the tag w/o checking it out
+            // git cat-file --batch v1.0.0:pom.xml
+            final String tagVersion = getProjectVersion(tag);
+
+            String defaultVersion = null;
+            try {
+                defaultVersion = GitFlowVersionInfo.parse(tagVersion)
+                        .getNextSnapshotVersionString();
+            } catch (VersionParseException e) {
+                if (getLog().isDebugEnabled()) {
+                    getLog().debug(e);
+                }
+            }
+
+            if (defaultVersion == null) {
+                throw new MojoFailureException(
+                        "Cannot get default project version.");
+            }
+
+            final String name = promptName(tag.substring(gitFlowConfig
+                    .getVersionTagPrefix().length()));
+            final String version = promptVersion(defaultVersion);
+
+            final String branchName = gitFlowConfig.getSupportBranchPrefix()
+                    + name;
+
+            // git for-each-ref refs/heads/support/...
+            if (gitCheckBranchExists(branchName)) {
+                throw new MojoFailureException(
+                        "Support branch with that name already exists. Cannot start support branch.");
+            }
+
+            if (!tychoBuild) {
+                if (!version.equals(tagVersion)) {
+                    // git fast-import
+                    gitCreateBranchWithVersion(branchName, tag, version,
+                            commitMessages.getSupportStartMessage());
+                } else {
+                    // git branch support/... v1.0.0
+                    gitCreateBranch(branchName, tag);
+                }
+
+                if (checkoutBranch || installProject) {
+                    // check uncommitted changes
+                    checkUncommittedChanges();
+
+                    // git checkout support/...
+                    gitCheckout(branchName);
+                }
+            } else {
+                // check uncommitted changes
+                checkUncommittedChanges();
+
+                // git checkout -b support/... v1.0.0
+                gitCreateAndCheckout(branchName, tag);
+
+                // execute if version changed
+                if (!version.equals(tagVersion)) {
+                    // mvn versions:set -DnewVersion=...
+                    // -DgenerateBackupPoms=false
+                    mvnSetVersions(version);
+
+                    // git commit --only -m updating versions for support
+                    gitCommitVersionFiles(commitMessages
+                            .getSupportStartMessage());
+                }
+            }
+
+            if (installProject) {
+                // mvn clean install
+                mvnCleanInstall();
+            }
+        } catch (CommandLineException e) {
+            getLog().error(e);
+        }
+    }
+
+    /**
+     * Selects version tag from the <code>tagName</code> parameter or
+     * interactively.
+     * 
+     * @param tags
+     *            Version tags, most recent first.
+     * @return Tag name.
+     * @throws MojoFailureException
+     *             If tag doesn't exist or cannot be chosen.
+     */
+    private String selectTag(final List<String> tags)
+            throws MojoFailureException {
+        final String prefix = gitFlowConfig.getVersionTagPrefix();
+        if (StringUtils.isNotBlank(tagName)) {
+            final String name = tagName.trim();
+            if (tags.contains(name)) {
+                return name;
+            }
+            if (tags.contains(prefix + name)) {
+                return prefix + name;
+            }
+            throw new MojoFailureException("Tag '" + tagName
+                    + "' doesn't exist.");
+        }
+
+        if (!settings.isInteractiveMode()) {
+            throw new MojoFailureException(
+                    "Tag name to start support branch from is blank.");
+        }
+
+        final String tag = promptBranchName("Version tags", prefix, tags,
+                null);
+        if (StringUtils.isBlank(tag)) {
+            throw new MojoFailureException(
+                    "Tag name to start support branch from is blank.");
+        }
+        return tag;
+    }
+
+    /**
+     * Prompts for the support branch name w/o the support branch prefix. The
+     * name is valid if the full branch name is valid.
+     * 
+     * @param defaultValue
+     *            Name used if the answer is empty.
+     * @return Name.
+     * @throws MojoFailureException
+     * @throws CommandLineException
+     */
+    private String promptName(final String defaultValue)
+            throws MojoFailureException, CommandLineException {
+        final String prefix = gitFlowConfig.getSupportBranchPrefix();
+        if (StringUtils.isNotBlank(supportName)) {
+            if (!validBranchName(prefix + supportName.trim())) {
+                throw new MojoFailureException("The name of the branch '"
+                        + prefix + supportName.trim() + "' is not valid.");
+            }
+            return supportName.trim();
+        }
+
+        String value = null;
+        if (settings.isInteractiveMode()) {
+            try {
+                while (value == null) {
+                    value = prompter.prompt("What is the support branch name? "
+                            + prefix + " [" + defaultValue + "]");
+
+                    if (!"".equals(value) && !validBranchName(prefix + value)) {
+                        getLog().info("The name of the branch is not valid.");
+                        value = null;
+                    }
+                }
+            } catch (PrompterException e) {
+                getLog().error(e);
+            }
+        }
+
+        if (StringUtils.isBlank(value)) {
+            value = defaultValue;
+        }
+        if (!validBranchName(prefix + value)) {
+            throw new MojoFailureException("The name of the branch '" + prefix
+                    + value + "' is not valid.");
+        }
+        return value;
+    }
+
+    /**
+     * Prompts for the project version of the support branch.
+     * 
+     * @param defaultValue
+     *            Version used if the answer is empty.
+     * @return Version.
+     * @throws MojoFailureException
+     */
+    private String promptVersion(final String defaultValue)
+            throws MojoFailureException {
+        if (StringUtils.isNotBlank(supportVersion)) {
+            if (!validVersion(supportVersion.trim())) {
+                throw new MojoFailureException("The version '"
+                        + supportVersion + "' is not valid.");
+            }
+            return supportVersion.trim();
+        }
+
+        String value = null;
+        if (settings.isInteractiveMode()) {
+            try {
+                while (value == null) {
+                    value = prompter
+                            .prompt("What is the support branch version? ["
+                                    + defaultValue + "]");
+
+                    if (!"".equals(value) && !validVersion(value)) {
+                        getLog().info("The version is not valid.");
+                        value = null;
+                    }
+                }
+            } catch (PrompterException e) {
+                getLog().error(e);
+            }
+        }
+
+        if (StringUtils.isBlank(value)) {
+            value = defaultValue;
+        }
+        return value;
+    }
+
+    private static boolean validVersion(final String version) {
+        // the build specifier of the version info can be any string
+        if (version.matches(".*\\s.*")) {
+            return false;
+        }
+        try {
+            GitFlowVersionInfo.parse(version);
+            return true;
+        } catch (VersionParseException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Project version model. Parses versions and computes release, next and
+ * SNAPSHOT versions the same way as <code>DefaultVersionInfo</code> of the
+ * maven-release-manager, e.g. <code>1.2.3-SNAPSHOT</code> has release version
+ * <code>1.2.3</code> and next version <code>1.2.4</code>, and
+ * <code>1.0-beta-1</code> has next version <code>1.0-beta-2</code>.
+ * <p>
+ * Instances are immutable, use {@link #parse(String)} to get cached instance.
+ * </p>
+ * 
+ */
+public final class GitFlowVersionInfo {
+    /** Digits, annotation, annotation revision and build specifier. */
+    private static final Pattern STANDARD_PATTERN = Pattern
+            .compile("^((?:\\d+\\.)*\\d+)([-_])?([a-zA-Z]*)([-_])?(\\d*)(?:([-_])?(.*?))?$");
+    /** SNAPSHOT w/o digits. */
+    private static final Pattern ALTERNATE_PATTERN = Pattern
+            .compile("^(SNAPSHOT|[a-zA-Z]+[_-]SNAPSHOT)");
+
+    /** Maximum number of cached versions. */
+    private static final int CACHE_SIZE = 1024;
+    /** Parsed versions. */
+    private static final ConcurrentMap<String, GitFlowVersionInfo> CACHE = new ConcurrentHashMap<String, GitFlowVersionInfo>();
+
+    private final String strVersion;
+    private final List<String> digits;
+    private final String annotation;
+    private final String annotationRevision;
+    private final String buildSpecifier;
+    private final String annotationSeparator;
+    private final String annotationRevSeparator;
+    private final String buildSeparator;
+
+    /**
+     * Parses version.
+     * 
+     * @param version
+     *            Version string.
+     * @throws VersionParseException
+     *             If version cannot be parsed.
+     */
+    public GitFlowVersionInfo(final String version)
+            throws VersionParseException {
+        strVersion = version;
+
+        if (version == null) {
+            throw new VersionParseException(
+                    "Unable to parse the version string: \"null\"");
+        }
+
+        if (ALTERNATE_PATTERN.matcher(version).matches()) {
+            digits = null;
+            annotation = null;
+            annotationRevision = null;
+            annotationSeparator = null;
+            annotationRevSeparator = null;
+            buildSpecifier = version;
+            buildSeparator = null;
+            return;
+        }
+
+        final Matcher m = STANDARD_PATTERN.matcher(version);
+        if (!m.matches()) {
+            throw new VersionParseException(
+                    "Unable to parse the version string: \"" + version + "\"");
+        }
+
+        digits = Collections.unmodifiableList(Arrays.asList(StringUtils.split(
+                m.group(1), ".")));
+        if (!Artifact.SNAPSHOT_VERSION.equals(m.group(3))) {
+            annotationSeparator = m.group(2);
+            annotation = nullIfEmpty(m.group(3));
+            if (StringUtils.isNotEmpty(m.group(4))
+                    && StringUtils.isEmpty(m.group(5))) {
+                // the build separator was picked up as the annotation
+                // revision separator
+                annotationRevSeparator = null;
+                annotationRevision = null;
+                buildSeparator = m.group(4);
+                buildSpecifier = nullIfEmpty(m.group(7));
+            } else {
+                annotationRevSeparator = m.group(4);
+                annotationRevision = nullIfEmpty(m.group(5));
+                buildSeparator = m.group(6);
+                buildSpecifier = nullIfEmpty(m.group(7));
+            }
+        } else {
+            // annotation is SNAPSHOT, so it is the build specifier
+            annotationSeparator = null;
+            annotation = null;
+            annotationRevSeparator = null;
+            annotationRevision = null;
+            buildSeparator = m.group(2);
+            buildSpecifier = nullIfEmpty(m.group(3));
+        }
+    }
+
+    private GitFlowVersionInfo(final List<String> digits,
+            final String annotation, final String annotationRevision,
+            final String buildSpecifier, final String annotationSeparator,
+            final String annotationRevSeparator, final String buildSeparator) {
+        this.digits = digits;
+        this.annotation = annotation;
+        this.annotationRevision = annotationRevision;
+        this.buildSpecifier = buildSpecifier;
+        this.annotationSeparator = annotationSeparator;
+        this.annotationRevSeparator = annotationRevSeparator;
+        this.buildSeparator = buildSeparator;
+        this.strVersion = toVersionString();
+    }
+
+    /**
+     * Parses version, returns cached instance if the same version was parsed
+     * before.
+     * 
+     * @param version
+     *            Version string.
+     * @return Version info.
+     * @throws VersionParseException
+     *             If version cannot be parsed.
+     */
+    public static GitFlowVersionInfo parse(final String version)
+            throws VersionParseException {
+        GitFlowVersionInfo info = version == null ? null : CACHE.get(version);
+        if (info == null) {
+            info = new GitFlowVersionInfo(version);
+            if (CACHE.size() >= CACHE_SIZE) {
+                CACHE.clear();
+            }
+            CACHE.putIfAbsent(version, info);
+        }
+        return info;
+    }
+
+    /**
+     * Gets next version, i.e. version with incremented annotation revision if
+     * it is numeric or incremented last digit otherwise.
+     * 
+     * @return Next version or <code>null</code> if version has no digits.
+     */
+    public GitFlowVersionInfo getNextVersion() {
+        if (digits == null) {
+            return null;
+        }
+
+        final List<String> nextDigits = new ArrayList<String>(digits);
+        String nextAnnotationRevision = annotationRevision;
+        if (StringUtils.isNumeric(nextAnnotationRevision)) {
+            nextAnnotationRevision = increment(nextAnnotationRevision);
+        } else {
+            nextDigits.set(nextDigits.size() - 1,
+                    increment(nextDigits.get(nextDigits.size() - 1)));
+        }
+
+        return new GitFlowVersionInfo(
+                Collections.unmodifiableList(nextDigits), annotation,
+                nextAnnotationRevision, buildSpecifier, annotationSeparator,
+                annotationRevSeparator, buildSeparator);
+    }
+
+    /**
+     * Gets release version, i.e. version w/o SNAPSHOT qualifier.
+     * 
+     * @return Release version string.
+     */
+    public String getReleaseVersionString() {
+        String baseVersion = strVersion;
+
+        final Matcher m = Artifact.VERSION_FILE_PATTERN.matcher(baseVersion);
+        if (m.matches()) {
+            baseVersion = m.group(1);
+        } else if (StringUtils.right(baseVersion, 9).equalsIgnoreCase(
+                "-" + Artifact.SNAPSHOT_VERSION)) {
+            // SNAPSHOT is case insensitive
+            baseVersion = baseVersion.substring(0, baseVersion.length()
+                    - Artifact.SNAPSHOT_VERSION.length() - 1);
+        } else if (baseVersion.equals(Artifact.SNAPSHOT_VERSION)) {
+            baseVersion = "1.0";
+        }
+        return baseVersion;
+    }
+
+    /**
+     * Gets SNAPSHOT version.
+     * 
+     * @return Release version with SNAPSHOT qualifier.
+     */
+    public String getSnapshotVersionString() {
+        if (strVersion.equals(Artifact.SNAPSHOT_VERSION)) {
+            return strVersion;
+        }
+
+        String baseVersion = getReleaseVersionString();
+        if (baseVersion.length() > 0) {
+            baseVersion += "-";
+        }
+        return baseVersion + Artifact.SNAPSHOT_VERSION;
+    }
+
+    /**
+     * Gets feature version, i.e. release version qualified with the feature
+     * name, e.g. <code>1.0.0-feature_name-SNAPSHOT</code>.
+     * 
+     * @param featureName
+     *            Feature name.
+     * @return Feature version string.
+     */
+    public String getFeatureVersionString(final String featureName) {
+        return getReleaseVersionString() + "-" + featureName + "-"
+                + Artifact.SNAPSHOT_VERSION;
+    }
+
+    /**
+     * Gets hotfix version, i.e. release version of the next version.
+     * 
+     * @return Hotfix version string or <code>null</code> if version has no
+     *         digits.
+     */
+    public String getHotfixVersionString() {
+        final GitFlowVersionInfo next = getNextVersion();
+        return next == null ? null : next.getReleaseVersionString();
+    }
+
+    /**
+     * Gets next development version, i.e. SNAPSHOT of the next version.
+     * 
+     * @return Next SNAPSHOT version string or <code>null</code> if version
+     *         has no digits.
+     */
+    public String getNextSnapshotVersionString() {
+        final GitFlowVersionInfo next = getNextVersion();
+        return next == null ? null : next.getSnapshotVersionString();
+    }
+
+    /**
+     * @return <code>true</code> if version is SNAPSHOT
+     */
+    public boolean isSnapshot() {
+        return ArtifactUtils.isSnapshot(strVersion);
+    }
+
+    /**
+     * @return the digits
+     */
+    public List<String> getDigits() {
+        return digits;
+    }
+
+    /**
+     * @return the annotation
+     */
+    public String getAnnotation() {
+        return annotation;
+    }
+
+    /**
+     * @return the annotationRevision
+     */
+    public String getAnnotationRevision() {
+        return annotationRevision;
+    }
+
+    /**
+     * @return the buildSpecifier
+     */
+    public String getBuildSpecifier() {
+        return buildSpecifier;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return strVersion;
+    }
+
+    private String toVersionString() {
+        final StringBuilder sb = new StringBuilder();
+        if (digits != null) {
+            sb.append(StringUtils.join(digits.iterator(), "."));
+        }
+        if (StringUtils.isNotEmpty(annotation)) {
+            sb.append(StringUtils.defaultString(annotationSeparator));
+            sb.append(annotation);
+        }
+        if (StringUtils.isNotEmpty(annotationRevision)) {
+            if (StringUtils.isEmpty(annotation)) {
+                sb.append(StringUtils.defaultString(annotationSeparator));
+            } else {
+                sb.append(StringUtils.defaultString(annotationRevSeparator));
+            }
+            sb.append(annotationRevision);
+        }
+        if (StringUtils.isNotEmpty(buildSpecifier)) {
+            sb.append(StringUtils.defaultString(buildSeparator));
+            sb.append(buildSpecifier);
+        }
+        return sb.toString();
+    }
+
+    private static String increment(final String s) {
+        final String value = new BigInteger(s).add(BigInteger.ONE).toString();
+        if (value.length() < s.length()) {
+            // string was left padded with zeros
+            return StringUtils.leftPad(value, s.length(), "0");
+        }
+        return value;
+    }
+
+    private static String nullIfEmpty(final String s) {
+        return StringUtils.isEmpty(s) ? null : s;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+/**
+ * Java implementation of the <code>git check-ref-format --allow-onelevel</code>
+ * rules.
+ * 
+ * @see <a href="https://git-scm.com/docs/git-check-ref-format">git
+ *      check-ref-format</a>
+ */
+public final class GitRefFormat {
+
+    private GitRefFormat() {
+    }
+
+    /**
+     * Checks whether the name is a valid reference name. Same as
+     * <code>git check-ref-format --allow-onelevel</code>, except that names
+     * beginning with a dash are invalid, git takes them as options.
+     * 
+     * @param refName
+     *            Reference name to check.
+     * @return <code>true</code> when name is valid, <code>false</code>
+     *         otherwise.
+     */
+    public static boolean isValid(final String refName) {
+        if (refName == null || refName.length() == 0) {
+            return false;
+        }
+        // cannot be the single character @
+        if ("@".equals(refName)) {
+            return false;
+        }
+        // cannot begin with a dash (would be taken as an option) or a slash,
+        // cannot end with a slash or a dot
+        if (refName.charAt(0) == '-' || refName.charAt(0) == '/'
+                || refName.endsWith("/")
+                || refName.endsWith(".")) {
+            return false;
+        }
+        // cannot contain .. or @{
+        if (refName.contains("..") || refName.contains("@{")) {
+            return false;
+        }
+
+        for (int i = 0; i < refName.length(); i++) {
+            final char c = refName.charAt(i);
+            // no control characters, space, ~ ^ : ? * [ and \
+            if (c < 0x20 || c == 0x7f || c == ' ' || c == '~' || c == '^'
+                    || c == ':' || c == '?' || c == '*' || c == '['
+                    || c == '\\') {
+                return false;
+            }
+        }
+
+        for (String component : refName.split("/", -1)) {
+            // no multiple consecutive slashes, no component beginning with a
+            // dot or ending with .lock
+            if (component.length() == 0 || component.charAt(0) == '.'
+                    || component.endsWith(".lock")) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
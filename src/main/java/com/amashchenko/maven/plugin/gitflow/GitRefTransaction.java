@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reference changes collected during the mojo execution and applied at once
+ * with <code>git update-ref --stdin</code>.
+ * 
+ */
+public class GitRefTransaction {
+    /** Annotated tags to create. */
+    private final List<Tag> tags = new ArrayList<Tag>();
+    /** Branches to delete. */
+    private final List<String> deletes = new ArrayList<String>();
+    /** Branches to delete w/o checking whether they are merged. */
+    private final List<String> forceDeletes = new ArrayList<String>();
+    /** Instructions for <code>git update-ref --stdin</code>. */
+    private final StringBuilder updates = new StringBuilder();
+
+    /**
+     * Adds annotated tag to create.
+     * 
+     * @param name
+     *            Name of the tag.
+     * @param target
+     *            Object name of the tagged commit.
+     * @param message
+     *            Tag message.
+     */
+    public void addTag(final String name, final String target,
+            final String message) {
+        tags.add(new Tag(name, target, message));
+    }
+
+    /**
+     * Adds branch to delete.
+     * 
+     * @param branchName
+     *            Name of the branch.
+     * @param force
+     *            Whether to delete the branch even if it is not merged.
+     */
+    public void addBranchDelete(final String branchName, final boolean force) {
+        if (force) {
+            forceDeletes.add(branchName);
+        } else {
+            deletes.add(branchName);
+        }
+    }
+
+    /**
+     * Adds <code>create</code> instruction.
+     * 
+     * @param ref
+     *            Full reference name.
+     * @param newValue
+     *            New object name.
+     */
+    public void create(final String ref, final String newValue) {
+        updates.append("create ").append(ref).append(' ').append(newValue)
+                .append('\n');
+    }
+
+    /**
+     * Adds <code>delete</code> instruction.
+     * 
+     * @param ref
+     *            Full reference name.
+     * @param oldValue
+     *            Expected current object name.
+     */
+    public void delete(final String ref, final String oldValue) {
+        updates.append("delete ").append(ref).append(' ').append(oldValue)
+                .append('\n');
+    }
+
+    /**
+     * @return the tags
+     */
+    public List<Tag> getTags() {
+        return Collections.unmodifiableList(tags);
+    }
+
+    /**
+     * @return the branches to delete
+     */
+    public List<String> getDeletes() {
+        return Collections.unmodifiableList(deletes);
+    }
+
+    /**
+     * @return the branches to delete w/o merge check
+     */
+    public List<String> getForceDeletes() {
+        return Collections.unmodifiableList(forceDeletes);
+    }
+
+    /**
+     * @return the <code>git update-ref --stdin</code> input
+     */
+    public String getUpdates() {
+        return updates.toString();
+    }
+
+    /**
+     * @return <code>true</code> if there is nothing to apply
+     */
+    public boolean isEmpty() {
+        return tags.isEmpty() && deletes.isEmpty() && forceDeletes.isEmpty()
+                && updates.length() == 0;
+    }
+
+    /**
+     * Annotated tag to create.
+     */
+    public static class Tag {
+        private final String name;
+        private final String target;
+        private final String message;
+
+        private Tag(final String name, final String target,
+                final String message) {
+            this.name = name;
+            this.target = target;
+            this.message = message;
+        }
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the target
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the message
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+}
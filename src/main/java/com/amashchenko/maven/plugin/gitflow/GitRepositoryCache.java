@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process wide cache of repository information. In a resident JVM, e.g. the
+ * Maven Daemon, the plugin classes are kept loaded between builds, so the
+ * location of the repository and the gitflow configuration are not queried
+ * from Git again on every goal execution.
+ * <p>
+ * Cached configuration is only used while the configuration file has the
+ * same modification time and size.
+ * </p>
+ * 
+ */
+public final class GitRepositoryCache {
+    /** Maximum number of cached entries of each kind. */
+    private static final int MAX_ENTRIES = 64;
+
+    /** Repositories by working directory. */
+    private static final Map<String, Repository> REPOSITORIES = lruMap();
+    /** Configuration by configuration file. */
+    private static final Map<String, Config> CONFIGS = lruMap();
+
+    private GitRepositoryCache() {
+    }
+
+    /**
+     * Gets cached repository of the working directory.
+     * 
+     * @param workDir
+     *            Working directory.
+     * @return Repository or <code>null</code> if not cached or Git directory
+     *         doesn't exist anymore.
+     */
+    public static Repository getRepository(final File workDir) {
+        final Repository repository;
+        synchronized (REPOSITORIES) {
+            repository = REPOSITORIES.get(workDir.getAbsolutePath());
+        }
+        if (repository != null && repository.getGitDir().isDirectory()) {
+            return repository;
+        }
+        return null;
+    }
+
+    /**
+     * Caches repository of the working directory.
+     * 
+     * @param workDir
+     *            Working directory.
+     * @param repository
+     *            Repository.
+     */
+    public static void putRepository(final File workDir,
+            final Repository repository) {
+        synchronized (REPOSITORIES) {
+            REPOSITORIES.put(workDir.getAbsolutePath(), repository);
+        }
+    }
+
+    /**
+     * Gets cached configuration.
+     * 
+     * @param configFile
+     *            Configuration file.
+     * @return Configuration values by name or <code>null</code> if not cached
+     *         or the file has changed.
+     */
+    public static Map<String, String> getConfig(final File configFile) {
+        final Config config;
+        synchronized (CONFIGS) {
+            config = CONFIGS.get(configFile.getAbsolutePath());
+        }
+        if (config != null && config.lastModified == configFile.lastModified()
+                && config.length == configFile.length()) {
+            return config.values;
+        }
+        return null;
+    }
+
+    /**
+     * Caches configuration with the current state of the file.
+     * 
+     * @param configFile
+     *            Configuration file.
+     * @param values
+     *            Configuration values by name.
+     */
+    public static void putConfig(final File configFile,
+            final Map<String, String> values) {
+        if (!configFile.isFile()) {
+            return;
+        }
+        final Config config = new Config(configFile.lastModified(),
+                configFile.length(), Collections
+                        .unmodifiableMap(new LinkedHashMap<String, String>(
+                                values)));
+        synchronized (CONFIGS) {
+            CONFIGS.put(configFile.getAbsolutePath(), config);
+        }
+    }
+
+    private static <V> Map<String, V> lruMap() {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Location of the repository.
+     */
+    public static class Repository {
+        private final File gitDir;
+        private final String topLevel;
+
+        /**
+         * Creates repository.
+         * 
+         * @param gitDir
+         *            Absolute Git directory.
+         * @param topLevel
+         *            Root of the working tree.
+         */
+        public Repository(final File gitDir, final String topLevel) {
+            this.gitDir = gitDir;
+            this.topLevel = topLevel;
+        }
+
+        /**
+         * @return the gitDir
+         */
+        public File getGitDir() {
+            return gitDir;
+        }
+
+        /**
+         * @return the topLevel
+         */
+        public String getTopLevel() {
+            return topLevel;
+        }
+    }
+
+    /**
+     * Configuration values with the state of the file they were read from.
+     */
+    private static class Config {
+        private final long lastModified;
+        private final long length;
+        private final Map<String, String> values;
+
+        private Config(final long lastModified, final long length,
+                final Map<String, String> values) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Extension;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Executes a task in several repositories with a bounded number of threads.
+ * A repository is started only after all repositories it depends on have
+ * finished successfully, repositories depending on a failed one are
+ * skipped.
+ * 
+ */
+public class MultiRepositoryOrchestrator {
+    /** Repositories by name. */
+    private final Map<String, Repository> repositories = new LinkedHashMap<String, Repository>();
+
+    /**
+     * Task executed in a repository.
+     */
+    public interface Task {
+        /**
+         * Executes task.
+         * 
+         * @param repository
+         *            Repository.
+         * @return <code>true</code> if the task succeeded.
+         * @throws Exception
+         */
+        boolean execute(Repository repository) throws Exception;
+    }
+
+    /** Result of the task in a repository. */
+    public enum Status {
+        /** Not executed yet. */
+        PENDING,
+        /** Task succeeded. */
+        SUCCESS,
+        /** Task failed. */
+        FAILED,
+        /** Not executed because a repository it depends on failed. */
+        SKIPPED
+    }
+
+    /**
+     * Adds repository.
+     * 
+     * @param name
+     *            Unique name of the repository.
+     * @param directory
+     *            Directory of the repository.
+     * @return Added repository.
+     */
+    public Repository addRepository(final String name, final File directory) {
+        final Repository repository = new Repository(name, directory);
+        repositories.put(name, repository);
+        return repository;
+    }
+
+    /**
+     * @return the repositories in the order they were added
+     */
+    public List<Repository> getRepositories() {
+        return new ArrayList<Repository>(repositories.values());
+    }
+
+    /**
+     * Adds dependencies between repositories derived from the POM files: a
+     * repository depends on another one if any of its modules use an
+     * artifact of the other repository as a parent, dependency, plugin or
+     * extension.
+     * 
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public void linkByArtifacts() throws IOException, XmlPullParserException {
+        final Map<String, String> producers = new HashMap<String, String>();
+        final Map<String, Set<String>> consumed = new HashMap<String, Set<String>>();
+        for (Repository repository : repositories.values()) {
+            final Set<String> uses = new HashSet<String>();
+            for (File pom : ProjectVersionFiles.collect(new File(
+                    repository.getDirectory(), "pom.xml"), false)) {
+                final Model model = ProjectVersionFiles.readModel(pom);
+                String groupId = model.getGroupId();
+                if (groupId == null && model.getParent() != null) {
+                    groupId = model.getParent().getGroupId();
+                }
+                producers.put(groupId + ":" + model.getArtifactId(),
+                        repository.getName());
+                collectArtifacts(model, uses);
+            }
+            consumed.put(repository.getName(), uses);
+        }
+
+        for (Repository repository : repositories.values()) {
+            for (String artifact : consumed.get(repository.getName())) {
+                final String producer = producers.get(artifact);
+                if (producer != null
+                        && !producer.equals(repository.getName())) {
+                    repository.addUpstream(producer);
+                }
+            }
+        }
+    }
+
+    private static void collectArtifacts(final Model model,
+            final Set<String> artifacts) {
+        if (model.getParent() != null) {
+            artifacts.add(model.getParent().getGroupId() + ":"
+                    + model.getParent().getArtifactId());
+        }
+        collectDependencies(model.getDependencies(), artifacts);
+        if (model.getDependencyManagement() != null) {
+            collectDependencies(model.getDependencyManagement()
+                    .getDependencies(), artifacts);
+        }
+        if (model.getBuild() != null) {
+            collectPlugins(model.getBuild().getPlugins(), artifacts);
+            if (model.getBuild().getPluginManagement() != null) {
+                collectPlugins(model.getBuild().getPluginManagement()
+                        .getPlugins(), artifacts);
+            }
+            for (Extension e : model.getBuild().getExtensions()) {
+                artifacts.add(e.getGroupId() + ":" + e.getArtifactId());
+            }
+        }
+    }
+
+    private static void collectDependencies(
+            final List<Dependency> dependencies, final Set<String> artifacts) {
+        for (Dependency d : dependencies) {
+            artifacts.add(d.getGroupId() + ":" + d.getArtifactId());
+        }
+    }
+
+    private static void collectPlugins(final List<Plugin> plugins,
+            final Set<String> artifacts) {
+        for (Plugin p : plugins) {
+            artifacts.add(p.getGroupId() + ":" + p.getArtifactId());
+            collectDependencies(p.getDependencies(), artifacts);
+        }
+    }
+
+    /**
+     * Finds repositories which depend on each other in a cycle or on an
+     * unknown repository.
+     * 
+     * @return Names of the repositories which can never be started, empty
+     *         if there are none.
+     */
+    public List<String> findUnresolvable() {
+        final Set<String> resolved = new HashSet<String>();
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Repository repository : repositories.values()) {
+                if (!resolved.contains(repository.getName())
+                        && resolved.containsAll(repository.getUpstream())) {
+                    resolved.add(repository.getName());
+                    progress = true;
+                }
+            }
+        }
+        final List<String> unresolvable = new ArrayList<String>();
+        for (String name : repositories.keySet()) {
+            if (!resolved.contains(name)) {
+                unresolvable.add(name);
+            }
+        }
+        return unresolvable;
+    }
+
+    /**
+     * Executes task in all repositories. Repositories are expected to be
+     * resolvable, see {@link #findUnresolvable()}.
+     * 
+     * @param task
+     *            Task to execute.
+     * @param threads
+     *            Maximum number of tasks executed at once.
+     * @throws InterruptedException
+     */
+    public void execute(final Task task, final int threads)
+            throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math
+                .max(1, threads));
+        final CompletionService<Repository> completion = new ExecutorCompletionService<Repository>(
+                executor);
+        try {
+            final Set<String> started = new HashSet<String>();
+            int running = submitReady(task, completion, started);
+            while (running > 0) {
+                final Repository done;
+                try {
+                    done = completion.take().get();
+                } catch (ExecutionException e) {
+                    // failures are recorded in the repository status
+                    throw new IllegalStateException(e.getCause());
+                }
+                running--;
+                if (done.getStatus() != Status.SUCCESS) {
+                    skipDownstream(done.getName());
+                }
+                running += submitReady(task, completion, started);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int submitReady(final Task task,
+            final CompletionService<Repository> completion,
+            final Set<String> started) {
+        int submitted = 0;
+        for (final Repository repository : repositories.values()) {
+            if (repository.getStatus() == Status.PENDING
+                    && !started.contains(repository.getName())
+                    && upstreamSucceeded(repository)) {
+                started.add(repository.getName());
+                completion.submit(new Callable<Repository>() {
+                    @Override
+                    public Repository call() {
+                        final long start = System.currentTimeMillis();
+                        Status status;
+                        try {
+                            status = task.execute(repository) ? Status.SUCCESS
+                                    : Status.FAILED;
+                        } catch (Exception e) {
+                            repository.setError(e);
+                            status = Status.FAILED;
+                        }
+                        repository.setResult(status,
+                                System.currentTimeMillis() - start);
+                        return repository;
+                    }
+                });
+                submitted++;
+            }
+        }
+        return submitted;
+    }
+
+    private boolean upstreamSucceeded(final Repository repository) {
+        for (String name : repository.getUpstream()) {
+            final Repository upstream = repositories.get(name);
+            if (upstream == null || upstream.getStatus() != Status.SUCCESS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipDownstream(final String name) {
+        for (Repository repository : repositories.values()) {
+            if (repository.getStatus() == Status.PENDING
+                    && repository.getUpstream().contains(name)) {
+                repository.setResult(Status.SKIPPED, 0);
+                skipDownstream(repository.getName());
+            }
+        }
+    }
+
+    /**
+     * Repository with the result of the task.
+     */
+    public static class Repository {
+        private final String name;
+        private final File directory;
+        private final Set<String> upstream = new LinkedHashSet<String>();
+        private volatile Status status = Status.PENDING;
+        private volatile long duration;
+        private volatile Exception error;
+
+        private Repository(final String name, final File directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+
+        /**
+         * Adds repository which must succeed before this one is started.
+         * 
+         * @param upstreamName
+         *            Name of the repository.
+         */
+        public void addUpstream(final String upstreamName) {
+            upstream.add(upstreamName);
+        }
+
+        private void setResult(final Status status, final long duration) {
+            this.status = status;
+            this.duration = duration;
+        }
+
+        private void setError(final Exception error) {
+            this.error = error;
+        }
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the directory
+         */
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return the names of the repositories this one depends on
+         */
+        public Set<String> getUpstream() {
+            return upstream;
+        }
+
+        /**
+         * @return the status
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the duration of the task in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the exception thrown by the task or <code>null</code>
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+}
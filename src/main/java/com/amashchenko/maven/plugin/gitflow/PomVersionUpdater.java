@@ -0,0 +1,433 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Updates project version in POM files w/o running Maven. Only the version
+ * texts are replaced, formatting of the files is kept as is.
+ * <p>
+ * Like versions-maven-plugin set goal it changes the version of the project
+ * and its modules which have the old version, the parent version of the
+ * modules and the versions of dependencies and plugins referring to the
+ * changed modules.
+ * </p>
+ * 
+ */
+public class PomVersionUpdater {
+    /** Old version. */
+    private final String oldVersion;
+    /** New version. */
+    private final String newVersion;
+    /** POM files by path. */
+    private final Map<String, Pom> poms = new LinkedHashMap<String, Pom>();
+
+    /**
+     * Creates updater.
+     * 
+     * @param oldVersion
+     *            Current project version.
+     * @param newVersion
+     *            New project version.
+     */
+    public PomVersionUpdater(final String oldVersion, final String newVersion) {
+        this.oldVersion = oldVersion;
+        this.newVersion = newVersion;
+    }
+
+    /**
+     * Adds POM file.
+     * 
+     * @param path
+     *            Path of the file.
+     * @param content
+     *            Content of the file.
+     */
+    public void addPom(final String path, final String content) {
+        poms.put(path, new Pom(content));
+    }
+
+    /**
+     * Updates versions in all added POM files.
+     * 
+     * @return New content of the changed files by path.
+     */
+    public Map<String, String> update() {
+        // artifacts of the modules which version is changed
+        final Set<String> changed = new HashSet<String>();
+        for (Pom pom : poms.values()) {
+            if (oldVersion.equals(pom.getVersion())) {
+                changed.add(pom.getGroupId() + ":" + pom.getArtifactId());
+            }
+        }
+
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Pom> entry : poms.entrySet()) {
+            final Pom pom = entry.getValue();
+            final List<Element> targets = new ArrayList<Element>();
+
+            final Element version = pom.root.child("version");
+            if (version != null && oldVersion.equals(version.text())) {
+                targets.add(version);
+            }
+
+            final Element parent = pom.root.child("parent");
+            if (parent != null) {
+                final Element parentVersion = parent.child("version");
+                if (parentVersion != null
+                        && oldVersion.equals(parentVersion.text())
+                        && changed.contains(parent.childText("groupId") + ":"
+                                + parent.childText("artifactId"))) {
+                    targets.add(parentVersion);
+                }
+            }
+
+            collectReferences(pom, pom.root, changed, targets);
+
+            if (!targets.isEmpty()) {
+                result.put(entry.getKey(), replace(pom.content, targets));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects versions of dependencies, plugins and extensions referring to
+     * the changed modules.
+     * 
+     * @param pom
+     *            POM file.
+     * @param element
+     *            Element to search in.
+     * @param changed
+     *            Changed artifacts.
+     * @param targets
+     *            Collected version elements.
+     */
+    private void collectReferences(final Pom pom, final Element element,
+            final Set<String> changed, final List<Element> targets) {
+        for (Element child : element.children) {
+            if ("dependency".equals(child.name) || "plugin".equals(child.name)
+                    || "extension".equals(child.name)) {
+                final Element version = child.child("version");
+                if (version != null && oldVersion.equals(version.text())) {
+                    String groupId = child.childText("groupId");
+                    if (groupId == null && "plugin".equals(child.name)) {
+                        groupId = "org.apache.maven.plugins";
+                    } else if ("${project.groupId}".equals(groupId)
+                            || "${pom.groupId}".equals(groupId)) {
+                        groupId = pom.getGroupId();
+                    }
+                    if (changed.contains(groupId + ":"
+                            + child.childText("artifactId"))) {
+                        targets.add(version);
+                    }
+                }
+            } else {
+                collectReferences(pom, child, changed, targets);
+            }
+        }
+    }
+
+    /**
+     * Replaces text of the elements with the new version.
+     * 
+     * @param content
+     *            File content.
+     * @param targets
+     *            Elements to replace text of.
+     * @return New content.
+     */
+    private String replace(final String content, final List<Element> targets) {
+        final StringBuilder sb = new StringBuilder(content.length() + 16
+                * targets.size());
+        int pos = 0;
+        for (Element target : sortByPosition(targets)) {
+            sb.append(content, pos, target.textStart).append(newVersion);
+            pos = target.textEnd;
+        }
+        sb.append(content, pos, content.length());
+        return sb.toString();
+    }
+
+    private static List<Element> sortByPosition(final List<Element> elements) {
+        final List<Element> sorted = new ArrayList<Element>(elements);
+        Collections.sort(sorted, new Comparator<Element>() {
+            @Override
+            public int compare(Element o1, Element o2) {
+                return o1.textStart < o2.textStart ? -1
+                        : (o1.textStart == o2.textStart ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Gets project version from POM content. Version is inherited from the
+     * parent if not set.
+     * 
+     * @param content
+     *            POM content.
+     * @return Project version or <code>null</code>.
+     */
+    public static String getVersion(final String content) {
+        return new Pom(content).getVersion();
+    }
+
+    /**
+     * Gets property declared in POM content.
+     * 
+     * @param content
+     *            POM content.
+     * @param name
+     *            Property name.
+     * @return Property value or <code>null</code>.
+     */
+    public static String getProperty(final String content, final String name) {
+        final Element properties = new Pom(content).root.child("properties");
+        return properties == null ? null : properties.childText(name);
+    }
+
+    /**
+     * Gets relative path of the parent POM.
+     * 
+     * @param content
+     *            POM content.
+     * @return Relative path of the parent POM or <code>null</code> if there
+     *         is no parent.
+     */
+    public static String getParentPath(final String content) {
+        final Element parent = new Pom(content).root.child("parent");
+        if (parent == null) {
+            return null;
+        }
+        final Element relativePath = parent.child("relativePath");
+        if (relativePath == null) {
+            return "../pom.xml";
+        }
+        final String path = relativePath.text();
+        if (path == null || path.length() == 0) {
+            // empty relativePath, parent is not in the repository
+            return null;
+        }
+        return path.endsWith(".xml") ? path : path + "/pom.xml";
+    }
+
+    /**
+     * Gets modules declared in POM content, including modules of profiles.
+     * 
+     * @param content
+     *            POM content.
+     * @return Module names.
+     */
+    public static List<String> getModules(final String content) {
+        final Element root = new Pom(content).root;
+        final List<String> modules = new ArrayList<String>();
+        collectModules(root, modules);
+        final Element profiles = root.child("profiles");
+        if (profiles != null) {
+            for (Element profile : profiles.children) {
+                collectModules(profile, modules);
+            }
+        }
+        return modules;
+    }
+
+    private static void collectModules(final Element element,
+            final List<String> modules) {
+        final Element modulesElement = element.child("modules");
+        if (modulesElement != null) {
+            for (Element module : modulesElement.children) {
+                final String name = module.text();
+                if (name != null && name.length() > 0
+                        && !modules.contains(name)) {
+                    modules.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parsed POM file.
+     */
+    private static class Pom {
+        private final String content;
+        private final Element root;
+
+        private Pom(final String content) {
+            this.content = content;
+            this.root = parse(content);
+        }
+
+        private String getGroupId() {
+            String groupId = root.childText("groupId");
+            if (groupId == null && root.child("parent") != null) {
+                groupId = root.child("parent").childText("groupId");
+            }
+            return groupId;
+        }
+
+        private String getArtifactId() {
+            return root.childText("artifactId");
+        }
+
+        private String getVersion() {
+            String version = root.childText("version");
+            if (version == null && root.child("parent") != null) {
+                version = root.child("parent").childText("version");
+            }
+            return version;
+        }
+    }
+
+    /**
+     * XML element with the position of its text content.
+     */
+    private static class Element {
+        private final String name;
+        private final List<Element> children = new ArrayList<Element>();
+        private String content;
+        private int textStart = -1;
+        private int textEnd = -1;
+
+        private Element(final String name) {
+            this.name = name;
+        }
+
+        private Element child(final String childName) {
+            for (Element child : children) {
+                if (childName.equals(child.name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private String childText(final String childName) {
+            final Element child = child(childName);
+            return child == null ? null : child.text();
+        }
+
+        private String text() {
+            if (textStart < 0 || !children.isEmpty()) {
+                return null;
+            }
+            return content.substring(textStart, textEnd);
+        }
+    }
+
+    /**
+     * Parses XML into the tree of elements. It is a minimal parser for well
+     * formed POM files, text positions of leaf elements are trimmed of
+     * whitespace.
+     * 
+     * @param xml
+     *            XML content.
+     * @return Root element.
+     */
+    private static Element parse(final String xml) {
+        final Element document = new Element("");
+        final List<Element> stack = new ArrayList<Element>();
+        stack.add(document);
+        final List<Integer> starts = new ArrayList<Integer>();
+        starts.add(0);
+
+        int i = 0;
+        final int len = xml.length();
+        while (i < len) {
+            final int lt = xml.indexOf('<', i);
+            if (lt < 0) {
+                break;
+            }
+            if (xml.startsWith("<!--", lt)) {
+                i = skipTo(xml, "-->", lt);
+            } else if (xml.startsWith("<![CDATA[", lt)) {
+                i = skipTo(xml, "]]>", lt);
+            } else if (xml.startsWith("<?", lt)) {
+                i = skipTo(xml, "?>", lt);
+            } else if (xml.startsWith("<!", lt)) {
+                i = skipTo(xml, ">", lt);
+            } else if (xml.startsWith("</", lt)) {
+                final int gt = skipTo(xml, ">", lt);
+                if (stack.size() > 1) {
+                    final Element element = stack.remove(stack.size() - 1);
+                    final int start = starts.remove(starts.size() - 1);
+                    int s = start;
+                    int e = lt;
+                    while (s < e && Character.isWhitespace(xml.charAt(s))) {
+                        s++;
+                    }
+                    while (e > s && Character.isWhitespace(xml.charAt(e - 1))) {
+                        e--;
+                    }
+                    element.content = xml;
+                    element.textStart = s;
+                    element.textEnd = e;
+                }
+                i = gt;
+            } else {
+                int gt = lt + 1;
+                char quote = 0;
+                while (gt < len) {
+                    final char c = xml.charAt(gt);
+                    if (quote != 0) {
+                        if (c == quote) {
+                            quote = 0;
+                        }
+                    } else if (c == '"' || c == '\'') {
+                        quote = c;
+                    } else if (c == '>') {
+                        break;
+                    }
+                    gt++;
+                }
+                int nameEnd = lt + 1;
+                while (nameEnd < gt) {
+                    final char c = xml.charAt(nameEnd);
+                    if (Character.isWhitespace(c) || c == '/') {
+                        break;
+                    }
+                    nameEnd++;
+                }
+                final Element element = new Element(xml.substring(lt + 1,
+                        nameEnd));
+                stack.get(stack.size() - 1).children.add(element);
+                if (xml.charAt(gt - 1) != '/') {
+                    stack.add(element);
+                    starts.add(gt + 1);
+                }
+                i = gt + 1;
+            }
+        }
+
+        return document.children.isEmpty() ? document : document.children
+                .get(0);
+    }
+
+    private static int skipTo(final String xml, final String end,
+            final int from) {
+        final int idx = xml.indexOf(end, from);
+        return idx < 0 ? xml.length() : idx + end.length();
+    }
+}
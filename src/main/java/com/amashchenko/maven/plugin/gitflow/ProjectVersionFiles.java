@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Collects files which can be changed by setting project version, i.e. POM
+ * files of the project and all its modules and, for Tycho builds, the
+ * Eclipse metadata files. Modules are read from the POM files on disk, so
+ * the result reflects the currently checked out branch.
+ * 
+ */
+public final class ProjectVersionFiles {
+    /** Tycho files in the module directory which contain versions. */
+    private static final String[] TYCHO_FILES = { "META-INF/MANIFEST.MF",
+            "feature.xml", "category.xml" };
+
+    private ProjectVersionFiles() {
+    }
+
+    /**
+     * Collects version files.
+     * 
+     * @param rootPom
+     *            POM file of the root project.
+     * @param tychoBuild
+     *            Whether to include Tycho metadata files.
+     * @return Existing files which can contain project version.
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public static List<File> collect(final File rootPom,
+            final boolean tychoBuild) throws IOException,
+            XmlPullParserException {
+        final Set<File> poms = new LinkedHashSet<File>();
+        collectPoms(rootPom.getCanonicalFile(), poms);
+
+        final List<File> files = new ArrayList<File>();
+        for (File pom : poms) {
+            files.add(pom);
+            if (tychoBuild) {
+                final File dir = pom.getParentFile();
+                for (String name : TYCHO_FILES) {
+                    final File file = new File(dir, name);
+                    if (file.isFile()) {
+                        files.add(file);
+                    }
+                }
+                final File[] products = dir.listFiles(new FilenameFilter() {
+                    @Override
+                    public boolean accept(File d, String name) {
+                        return name.endsWith(".product");
+                    }
+                });
+                if (products != null) {
+                    for (File product : products) {
+                        files.add(product);
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Recursively collects POM files of the modules, including modules
+     * declared in profiles.
+     * 
+     * @param pom
+     *            POM file.
+     * @param poms
+     *            Collected POM files.
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    private static void collectPoms(final File pom, final Set<File> poms)
+            throws IOException, XmlPullParserException {
+        if (!pom.isFile() || !poms.add(pom)) {
+            return;
+        }
+
+        final Model model = readModel(pom);
+
+        final Set<String> modules = new LinkedHashSet<String>(
+                model.getModules());
+        for (Profile profile : model.getProfiles()) {
+            modules.addAll(profile.getModules());
+        }
+
+        for (String module : modules) {
+            File modulePom = new File(pom.getParentFile(), module);
+            if (modulePom.isDirectory()) {
+                modulePom = new File(modulePom, "pom.xml");
+            }
+            collectPoms(modulePom.getCanonicalFile(), poms);
+        }
+    }
+
+    /**
+     * Reads POM model.
+     * 
+     * @param pom
+     *            POM file.
+     * @return Model.
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public static Model readModel(final File pom) throws IOException,
+            XmlPullParserException {
+        final FileReader fileReader = new FileReader(pom);
+        try {
+            return new MavenXpp3Reader().read(fileReader);
+        } finally {
+            fileReader.close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Extension;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Scans reactor projects for SNAPSHOT versions in parents, dependencies,
+ * dependency management, plugins, plugin dependencies and extensions.
+ * Artifacts of the reactor itself are ignored.
+ * 
+ */
+public final class SnapshotDependencyScanner {
+    private SnapshotDependencyScanner() {
+    }
+
+    /**
+     * Scans projects.
+     * 
+     * @param projects
+     *            Reactor projects.
+     * @return SNAPSHOT coordinates by project id, only projects with SNAPSHOT
+     *         versions are included.
+     */
+    public static Map<String, List<String>> scan(
+            final List<MavenProject> projects) {
+        final Set<String> reactor = new HashSet<String>();
+        for (MavenProject project : projects) {
+            reactor.add(project.getGroupId() + ":" + project.getArtifactId());
+        }
+
+        final Map<String, List<String>> snapshots = new LinkedHashMap<String, List<String>>();
+        for (MavenProject project : projects) {
+            final List<String> found = scan(project, reactor);
+            if (!found.isEmpty()) {
+                snapshots.put(project.getId(), found);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Scans single project.
+     * 
+     * @param project
+     *            Project.
+     * @param reactor
+     *            Reactor artifacts.
+     * @return SNAPSHOT coordinates.
+     */
+    private static List<String> scan(final MavenProject project,
+            final Set<String> reactor) {
+        final List<String> found = new ArrayList<String>();
+
+        final Parent parent = project.getModel().getParent();
+        if (parent != null) {
+            check(found, reactor, "parent", parent.getGroupId(),
+                    parent.getArtifactId(), parent.getVersion());
+        }
+
+        checkDependencies(found, reactor, "dependency",
+                project.getDependencies());
+        if (project.getDependencyManagement() != null) {
+            checkDependencies(found, reactor, "dependencyManagement", project
+                    .getDependencyManagement().getDependencies());
+        }
+
+        checkPlugins(found, reactor, "plugin", project.getBuildPlugins());
+        if (project.getPluginManagement() != null) {
+            checkPlugins(found, reactor, "pluginManagement", project
+                    .getPluginManagement().getPlugins());
+        }
+
+        if (project.getBuildExtensions() != null) {
+            for (Extension e : project.getBuildExtensions()) {
+                check(found, reactor, "extension", e.getGroupId(),
+                        e.getArtifactId(), e.getVersion());
+            }
+        }
+
+        return found;
+    }
+
+    private static void checkDependencies(final List<String> found,
+            final Set<String> reactor, final String type,
+            final List<Dependency> dependencies) {
+        if (dependencies != null) {
+            for (Dependency d : dependencies) {
+                check(found, reactor, type, d.getGroupId(), d.getArtifactId(),
+                        d.getVersion());
+            }
+        }
+    }
+
+    private static void checkPlugins(final List<String> found,
+            final Set<String> reactor, final String type,
+            final List<Plugin> plugins) {
+        if (plugins != null) {
+            for (Plugin p : plugins) {
+                check(found, reactor, type, p.getGroupId(), p.getArtifactId(),
+                        p.getVersion());
+                checkDependencies(found, reactor, type + " dependency",
+                        p.getDependencies());
+            }
+        }
+    }
+
+    private static void check(final List<String> found,
+            final Set<String> reactor, final String type,
+            final String groupId, final String artifactId,
+            final String version) {
+        if (ArtifactUtils.isSnapshot(version)
+                && !reactor.contains(groupId + ":" + artifactId)) {
+            final String coordinate = type + " " + groupId + ":" + artifactId
+                    + ":" + version;
+            if (!found.contains(coordinate)) {
+                found.add(coordinate);
+            }
+        }
+    }
+}
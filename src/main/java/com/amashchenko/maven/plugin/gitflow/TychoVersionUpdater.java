@@ -0,0 +1,441 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Updates versions of a Tycho project w/o executing the Tycho versions
+ * plugin. Rewrites POM files with {@link PomVersionUpdater} and keeps the
+ * Eclipse metadata consistent with them, i.e. <code>Bundle-Version</code> of
+ * <code>META-INF/MANIFEST.MF</code>, the version of <code>feature.xml</code>
+ * and the references to the changed bundles and features in
+ * <code>feature.xml</code>, <code>category.xml</code> and
+ * <code>*.product</code> files. The Maven version <code>X-SNAPSHOT</code> is
+ * written as the OSGi version <code>X.qualifier</code>.
+ * <p>
+ * Files are read and rewritten in parallel, each module only changes its own
+ * files. If the project layout is not understood, e.g. the metadata version
+ * of a changed module differs from its POM version or a file isn't UTF-8,
+ * nothing is written and <code>null</code> is returned, so the caller can
+ * fall back to the Tycho versions plugin.
+ * </p>
+ * 
+ */
+public class TychoVersionUpdater {
+    /** OSGi version w/o qualifier. */
+    private static final Pattern OSGI_VERSION = Pattern
+            .compile("\\d+(?:\\.\\d+){0,2}");
+    /** Bundle-Version header value. */
+    private static final Pattern BUNDLE_VERSION = Pattern.compile(
+            "^Bundle-Version:[ \\t]*([^\\s]+)", Pattern.MULTILINE);
+    /** Bundle-SymbolicName header value w/o directives. */
+    private static final Pattern BUNDLE_SYMBOLIC_NAME = Pattern.compile(
+            "^Bundle-SymbolicName:[ \\t]*([^;\\s]+)", Pattern.MULTILINE);
+    /** Start tags of the elements which can refer to bundles and features. */
+    private static final Pattern TAG = Pattern
+            .compile("<(feature|plugin|includes|bundle|product)(\\s[^>]*)?>");
+    /** Attribute of the start tag. */
+    private static final Pattern ATTRIBUTE = Pattern
+            .compile("([\\w:.-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+    /** Encoding in the XML declaration. */
+    private static final Pattern XML_ENCODING = Pattern
+            .compile("^<\\?xml[^>]*encoding=[\"']([\\w.:-]+)[\"']");
+
+    private static final String MANIFEST = "MANIFEST.MF";
+    private static final String FEATURE = "feature.xml";
+
+    /** Old version. */
+    private final String oldVersion;
+    /** New version. */
+    private final String newVersion;
+    /** Old OSGi version. */
+    private final String oldOsgiVersion;
+    /** New OSGi version. */
+    private final String newOsgiVersion;
+
+    /**
+     * Creates updater.
+     * 
+     * @param oldVersion
+     *            Current project version.
+     * @param newVersion
+     *            New project version.
+     */
+    public TychoVersionUpdater(final String oldVersion,
+            final String newVersion) {
+        this.oldVersion = oldVersion;
+        this.newVersion = newVersion;
+        this.oldOsgiVersion = toOsgiVersion(oldVersion);
+        this.newOsgiVersion = toOsgiVersion(newVersion);
+    }
+
+    /**
+     * Converts Maven version to OSGi version, e.g. <code>1.2.0-SNAPSHOT</code>
+     * to <code>1.2.0.qualifier</code>.
+     * 
+     * @param version
+     *            Maven version.
+     * @return OSGi version or <code>null</code> if the version cannot be
+     *         converted.
+     */
+    public static String toOsgiVersion(final String version) {
+        if (version == null) {
+            return null;
+        }
+        final String suffix = "-" + Artifact.SNAPSHOT_VERSION;
+        if (version.endsWith(suffix)) {
+            final String base = version.substring(0, version.length()
+                    - suffix.length());
+            // qualifier is the fourth segment of the OSGi version
+            return base.matches("\\d+\\.\\d+\\.\\d+") ? base + ".qualifier"
+                    : null;
+        }
+        return OSGI_VERSION.matcher(version).matches() ? version : null;
+    }
+
+    /**
+     * Updates versions in the files.
+     * 
+     * @param files
+     *            POM files and Tycho metadata files of the project, as
+     *            collected by {@link ProjectVersionFiles}.
+     * @return Changed files or <code>null</code> if the versions cannot be
+     *         updated by this updater and nothing was written.
+     * @throws IOException
+     */
+    public List<File> update(final List<File> files) throws IOException {
+        if (oldOsgiVersion == null || newOsgiVersion == null) {
+            return null;
+        }
+
+        final int threads = Math.max(1, Math.min(files.size(), Runtime
+                .getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // read all files
+            final List<Callable<String>> reads = new ArrayList<Callable<String>>();
+            for (final File file : files) {
+                reads.add(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        return read(file);
+                    }
+                });
+            }
+            final List<String> contents = execute(executor, reads);
+            if (contents.contains(null)) {
+                return null;
+            }
+
+            // POM files and the version of each module
+            final PomVersionUpdater pomUpdater = new PomVersionUpdater(
+                    oldVersion, newVersion);
+            final Set<File> changedModules = new HashSet<File>();
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                if (file.getName().endsWith(".xml") && isPom(contents.get(i))) {
+                    pomUpdater.addPom(file.getPath(), contents.get(i));
+                    if (oldVersion.equals(PomVersionUpdater.getVersion(contents
+                            .get(i)))) {
+                        changedModules.add(file.getParentFile());
+                    }
+                }
+            }
+
+            // bundles and features of the changed modules
+            final Set<String> bundles = new HashSet<String>();
+            final Set<String> features = new HashSet<String>();
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final String content = contents.get(i);
+                if (MANIFEST.equals(file.getName())
+                        && changedModules.contains(getModuleDir(file))) {
+                    final Matcher name = BUNDLE_SYMBOLIC_NAME.matcher(content);
+                    final Matcher version = BUNDLE_VERSION.matcher(content);
+                    if (!name.find() || !version.find()
+                            || !oldOsgiVersion.equals(version.group(1))) {
+                        return null;
+                    }
+                    bundles.add(name.group(1));
+                } else if (FEATURE.equals(file.getName())
+                        && changedModules.contains(getModuleDir(file))) {
+                    final Matcher tag = TAG.matcher(content);
+                    if (!tag.find() || !"feature".equals(tag.group(1))) {
+                        return null;
+                    }
+                    final Map<String, String> attributes = parseAttributes(tag
+                            .group(2));
+                    if (attributes.get("id") == null
+                            || !oldOsgiVersion.equals(attributes
+                                    .get("version"))) {
+                        return null;
+                    }
+                    features.add(attributes.get("id"));
+                }
+            }
+
+            // rewrite metadata files
+            final Map<String, String> poms = pomUpdater.update();
+            final List<Callable<String>> rewrites = new ArrayList<Callable<String>>();
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final String content = contents.get(i);
+                final boolean changedModule = changedModules
+                        .contains(getModuleDir(file));
+                rewrites.add(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        if (poms.containsKey(file.getPath())) {
+                            return poms.get(file.getPath());
+                        }
+                        if (MANIFEST.equals(file.getName())) {
+                            return changedModule ? rewriteManifest(content)
+                                    : null;
+                        }
+                        if (file.getName().endsWith(".xml")
+                                && isPom(content)) {
+                            return null;
+                        }
+                        return rewriteReferences(content, changedModule,
+                                bundles, features);
+                    }
+                });
+            }
+            final List<String> newContents = execute(executor, rewrites);
+
+            // write changed files
+            final List<File> changed = new ArrayList<File>();
+            final List<Callable<String>> writes = new ArrayList<Callable<String>>();
+            for (int i = 0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final String newContent = newContents.get(i);
+                if (newContent != null && !newContent.equals(contents.get(i))) {
+                    changed.add(file);
+                    writes.add(new Callable<String>() {
+                        @Override
+                        public String call() throws IOException {
+                            write(file, newContent);
+                            return file.getPath();
+                        }
+                    });
+                }
+            }
+            execute(executor, writes);
+            return changed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Replaces <code>Bundle-Version</code> of the manifest.
+     * 
+     * @param content
+     *            Manifest content.
+     * @return New content.
+     */
+    private String rewriteManifest(final String content) {
+        final Matcher m = BUNDLE_VERSION.matcher(content);
+        if (!m.find()) {
+            return null;
+        }
+        return content.substring(0, m.start(1)) + newOsgiVersion
+                + content.substring(m.end(1));
+    }
+
+    /**
+     * Replaces versions of the changed bundles and features referred by
+     * <code>feature.xml</code>, <code>category.xml</code> or
+     * <code>*.product</code> file. The version of the product is replaced if
+     * its module is changed.
+     * 
+     * @param content
+     *            File content.
+     * @param changedModule
+     *            Whether the module of the file is changed.
+     * @param bundles
+     *            Symbolic names of the changed bundles.
+     * @param features
+     *            Ids of the changed features.
+     * @return New content.
+     */
+    private String rewriteReferences(final String content,
+            final boolean changedModule, final Set<String> bundles,
+            final Set<String> features) {
+        final StringBuilder sb = new StringBuilder(content.length());
+        int pos = 0;
+        final Matcher tag = TAG.matcher(content);
+        while (tag.find()) {
+            final String name = tag.group(1);
+            final String attributes = tag.group(2);
+            if (attributes == null) {
+                continue;
+            }
+            final String id = parseAttributes(attributes).get("id");
+
+            final boolean changed;
+            if ("product".equals(name)) {
+                changed = changedModule;
+            } else if ("plugin".equals(name) || "bundle".equals(name)) {
+                changed = bundles.contains(id);
+            } else {
+                changed = features.contains(id);
+            }
+            if (!changed) {
+                continue;
+            }
+
+            final int start = tag.start(2);
+            final Matcher attribute = ATTRIBUTE.matcher(attributes);
+            while (attribute.find()) {
+                final int group = attribute.group(2) != null ? 2 : 3;
+                final String value = attribute.group(group);
+                String newValue = null;
+                if ("version".equals(attribute.group(1))
+                        && oldOsgiVersion.equals(value)) {
+                    newValue = newOsgiVersion;
+                } else if ("url".equals(attribute.group(1))
+                        && value.endsWith("_" + oldOsgiVersion + ".jar")) {
+                    newValue = value.substring(0, value.length()
+                            - oldOsgiVersion.length() - 4)
+                            + newOsgiVersion + ".jar";
+                }
+                if (newValue != null) {
+                    sb.append(content, pos, start + attribute.start(group))
+                            .append(newValue);
+                    pos = start + attribute.end(group);
+                }
+            }
+        }
+        sb.append(content, pos, content.length());
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseAttributes(final String attributes) {
+        final Map<String, String> result = new HashMap<String, String>();
+        if (attributes != null) {
+            final Matcher m = ATTRIBUTE.matcher(attributes);
+            while (m.find()) {
+                result.put(m.group(1), m.group(2) != null ? m.group(2) : m
+                        .group(3));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isPom(final String content) {
+        return content.contains("<project");
+    }
+
+    /**
+     * @param file
+     *            Version file.
+     * @return Directory of the module the file belongs to.
+     */
+    private static File getModuleDir(final File file) {
+        final File dir = file.getParentFile();
+        return MANIFEST.equals(file.getName()) ? dir.getParentFile() : dir;
+    }
+
+    /**
+     * Reads file as UTF-8.
+     * 
+     * @param file
+     *            File.
+     * @return Content or <code>null</code> if the XML file declares other
+     *         encoding.
+     * @throws IOException
+     */
+    private static String read(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] data = new byte[(int) file.length()];
+            int off = 0;
+            int n;
+            while (off < data.length
+                    && (n = in.read(data, off, data.length - off)) != -1) {
+                off += n;
+            }
+            final String content = new String(data, 0, off, "UTF-8");
+            final Matcher m = XML_ENCODING.matcher(content);
+            if (m.find() && !"UTF-8".equalsIgnoreCase(m.group(1))) {
+                return null;
+            }
+            return content;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(final File file, final String content)
+            throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Executes tasks in the thread pool.
+     * 
+     * @param executor
+     *            Thread pool.
+     * @param tasks
+     *            Tasks.
+     * @return Results in the order of tasks.
+     * @throws IOException
+     */
+    private static List<String> execute(final ExecutorService executor,
+            final List<Callable<String>> tasks) throws IOException {
+        try {
+            final List<String> results = new ArrayList<String>();
+            for (Future<String> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Version update interrupted.");
+        } catch (ExecutionException e) {
+            final IOException ioe = new IOException("Version update failed.");
+            ioe.initCause(e.getCause());
+            throw ioe;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+/**
+ * Index of the version tags sorted with the Maven version ordering. Built
+ * once from the list of tags, answers whether a tag exists in constant time
+ * and the latest released version in logarithmic time, so tags don't have
+ * to be listed for each query.
+ * 
+ */
+public class VersionTagIndex {
+    /** Prefix of the version tags. */
+    private final String prefix;
+    /** Tag names. */
+    private final Set<String> tags = new HashSet<String>();
+    /** Released versions w/o the prefix, sorted by version. */
+    private final TreeMap<ComparableVersion, String> versions = new TreeMap<ComparableVersion, String>();
+
+    /**
+     * Creates index.
+     * 
+     * @param prefix
+     *            Prefix of the version tags.
+     * @param tagNames
+     *            Names of the tags starting with the prefix.
+     */
+    public VersionTagIndex(final String prefix,
+            final Collection<String> tagNames) {
+        this.prefix = prefix == null ? "" : prefix;
+        for (String tag : tagNames) {
+            add(tag);
+        }
+    }
+
+    /**
+     * Adds tag to the index, e.g. after it was created.
+     * 
+     * @param tagName
+     *            Tag name.
+     */
+    public void add(final String tagName) {
+        if (!tagName.startsWith(prefix) || !tags.add(tagName)) {
+            return;
+        }
+        final String version = tagName.substring(prefix.length());
+        if (version.length() > 0 && Character.isDigit(version.charAt(0))
+                && !ArtifactUtils.isSnapshot(version)) {
+            versions.put(new ComparableVersion(version), version);
+        }
+    }
+
+    /**
+     * @param tagName
+     *            Tag name.
+     * @return <code>true</code> if the tag exists.
+     */
+    public boolean containsTag(final String tagName) {
+        return tags.contains(tagName);
+    }
+
+    /**
+     * @param version
+     *            Version w/o the tag prefix.
+     * @return <code>true</code> if the tag of the version exists.
+     */
+    public boolean containsVersion(final String version) {
+        return tags.contains(prefix + version);
+    }
+
+    /**
+     * @return The latest released version or <code>null</code> if there are
+     *         no version tags.
+     */
+    public String getLatestVersion() {
+        return versions.isEmpty() ? null : versions.lastEntry().getValue();
+    }
+
+    /**
+     * Gets the given version or the first following hotfix version w/o tag,
+     * e.g. <code>1.0.2</code> for <code>1.0.1</code> if <code>1.0.1</code> is
+     * already tagged.
+     * 
+     * @param version
+     *            Version.
+     * @return Version w/o tag.
+     */
+    public String getFreeVersion(final String version) {
+        String candidate = version;
+        try {
+            while (candidate != null && containsVersion(candidate)) {
+                candidate = GitFlowVersionInfo.parse(candidate)
+                        .getHotfixVersionString();
+            }
+        } catch (VersionParseException e) {
+            candidate = null;
+        }
+        return candidate == null ? version : candidate;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.maven.shared.release.versions.DefaultVersionInfo;
+import org.apache.maven.shared.release.versions.VersionInfo;
+import org.junit.Test;
+
+/**
+ * Checks that {@link GitFlowVersionInfo} computes the same versions as
+ * <code>DefaultVersionInfo</code> of the maven-release-manager.
+ */
+public class GitFlowVersionInfoTest {
+
+    private static final String[] VERSIONS = { "1", "1-SNAPSHOT", "1.0",
+            "1.0-SNAPSHOT", "1.2.3-SNAPSHOT", "1.0.9", "01.09",
+            "1.0-beta-1", "1.0-beta-1-SNAPSHOT", "1.0-alpha-4-SNAPSHOT",
+            "2.0-RC1-SNAPSHOT", "1.0-RC-1", "1.0_01", "1.0-final",
+            "1.0-final-SNAPSHOT", "1.0.0.RELEASE", "1.0-20070101.123456-1",
+            "1.0-feature_a-SNAPSHOT", "SNAPSHOT", "foo-SNAPSHOT" };
+
+    @Test
+    public void testSameAsDefaultVersionInfo() throws Exception {
+        for (String version : VERSIONS) {
+            final GitFlowVersionInfo info = GitFlowVersionInfo.parse(version);
+            final DefaultVersionInfo expected = new DefaultVersionInfo(version);
+
+            assertEquals(version, expected.getReleaseVersionString(),
+                    info.getReleaseVersionString());
+            assertEquals(version, expected.getSnapshotVersionString(),
+                    info.getSnapshotVersionString());
+            assertEquals(version, expected.isSnapshot(), info.isSnapshot());
+
+            final VersionInfo expectedNext = expected.getNextVersion();
+            final GitFlowVersionInfo next = info.getNextVersion();
+            assertEquals(version, expectedNext == null ? null
+                    : expectedNext.toString(), next == null ? null : next
+                    .toString());
+        }
+    }
+
+    /**
+     * <code>DefaultVersionInfo</code> fails on more than 18 digits.
+     */
+    @Test
+    public void testIncrementLongDigits() throws Exception {
+        assertEquals("1.100000000000000000000", GitFlowVersionInfo
+                .parse("1.99999999999999999999").getNextVersion().toString());
+        assertEquals("1.0010", GitFlowVersionInfo.parse("1.0009")
+                .getNextVersion().toString());
+        assertEquals("1.0-beta-100000000000000000000-SNAPSHOT",
+                GitFlowVersionInfo.parse("1.0-beta-99999999999999999999")
+                        .getNextSnapshotVersionString());
+    }
+
+    @Test(expected = VersionParseException.class)
+    public void testParseError() throws Exception {
+        GitFlowVersionInfo.parse("not a version");
+    }
+}
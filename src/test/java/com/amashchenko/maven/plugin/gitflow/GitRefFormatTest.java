@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks {@link GitRefFormat} against the table of branch names and against
+ * <code>git check-ref-format --allow-onelevel</code>.
+ */
+public class GitRefFormatTest {
+
+    private static final String[] VALID = { "feature/a", "a", "1.0",
+            "release/1.0.x", "a.b/c", "foo@bar", "@a", "a/@", "a/-b", "a{b",
+            "a}b", "HEAD" };
+
+    private static final String[] INVALID = { "", "a b", " ", "a..b", "a~1",
+            "a^", "a:b", "a?", "a*", "a[b", "a\\b", "/a", "a/", "a.", ".a",
+            "a/.b", "a.lock", "a/b.lock", "a.lock/b", "a//b", "@{x", "a@{b",
+            "-a", "a\tb", "a\u007fb", "@" };
+
+    @Test
+    public void testValid() {
+        assertEquals(true, GitRefFormat.isValid("\u00e9"));
+        for (String name : VALID) {
+            assertEquals(name, true, GitRefFormat.isValid(name));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertFalse(GitRefFormat.isValid(null));
+        for (String name : INVALID) {
+            assertEquals(name, false, GitRefFormat.isValid(name));
+        }
+    }
+
+    @Test
+    public void testSameAsGit() throws Exception {
+        Assume.assumeTrue(checkRefFormat("a") != null);
+
+        for (String name : VALID) {
+            assertSameAsGit(name);
+        }
+        for (String name : INVALID) {
+            assertSameAsGit(name);
+        }
+    }
+
+    private static void assertSameAsGit(final String name)
+            throws InterruptedException {
+        final Integer exitCode = checkRefFormat(name);
+        if (name.startsWith("-")) {
+            // git takes it as an option and fails with the usage, such names
+            // are invalid
+            assertEquals(name, Integer.valueOf(129), exitCode);
+            assertFalse(name, GitRefFormat.isValid(name));
+        } else {
+            assertEquals(name, Boolean.valueOf(exitCode.intValue() == 0),
+                    Boolean.valueOf(GitRefFormat.isValid(name)));
+        }
+    }
+
+    /**
+     * Executes git check-ref-format --allow-onelevel.
+     * 
+     * @param name
+     *            Branch name to check.
+     * @return Exit code or <code>null</code> if git cannot be executed.
+     * @throws InterruptedException
+     */
+    private static Integer checkRefFormat(final String name)
+            throws InterruptedException {
+        final Process process;
+        try {
+            process = new ProcessBuilder("git", "check-ref-format",
+                    "--allow-onelevel", name).redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            final InputStream in = process.getInputStream();
+            try {
+                while (in.read() != -1) {
+                    // discard output
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return Integer.valueOf(process.waitFor());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014-2017 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.maven.plugin.gitflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Executes {@link MultiRepositoryOrchestrator} in temporary repositories
+ * with <code>file://</code> remotes: <code>web</code> depends on
+ * <code>api</code> which depends on <code>core</code>.
+ */
+public class MultiRepositoryOrchestratorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MultiRepositoryOrchestrator orchestrator;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(git(tmp.getRoot(), "--version"));
+
+        orchestrator = new MultiRepositoryOrchestrator();
+        // added in reverse order, the order comes from the POM files
+        addRepository("web", "<dependency><groupId>g</groupId>"
+                + "<artifactId>api</artifactId><version>1.0</version>"
+                + "</dependency>");
+        addRepository("api", "<dependency><groupId>g</groupId>"
+                + "<artifactId>core</artifactId><version>1.0</version>"
+                + "</dependency>");
+        addRepository("core", "");
+        orchestrator.linkByArtifacts();
+    }
+
+    @Test
+    public void testLinkByArtifacts() {
+        assertEquals(Collections.emptyList(), orchestrator.findUnresolvable());
+        for (MultiRepositoryOrchestrator.Repository r : orchestrator
+                .getRepositories()) {
+            if ("web".equals(r.getName())) {
+                assertEquals(Collections.singleton("api"), r.getUpstream());
+            } else if ("api".equals(r.getName())) {
+                assertEquals(Collections.singleton("core"), r.getUpstream());
+            } else {
+                assertTrue(r.getUpstream().isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testExecutionOrder() throws Exception {
+        final List<String> order = push(4);
+
+        assertEquals(Arrays.asList("core", "api", "web"), order);
+        for (MultiRepositoryOrchestrator.Repository r : orchestrator
+                .getRepositories()) {
+            assertEquals(r.getName(),
+                    MultiRepositoryOrchestrator.Status.SUCCESS, r.getStatus());
+            assertTrue(git(new File(tmp.getRoot(), r.getName() + ".git"),
+                    "rev-parse", "--verify", "refs/heads/master"));
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        // remote of api doesn't exist
+        assertTrue(git(new File(tmp.getRoot(), "api"), "remote", "set-url",
+                "origin", fileUrl(new File(tmp.getRoot(), "missing.git"))));
+
+        final List<String> order = push(4);
+
+        assertEquals(Arrays.asList("core", "api"), order);
+        for (MultiRepositoryOrchestrator.Repository r : orchestrator
+                .getRepositories()) {
+            final MultiRepositoryOrchestrator.Status expected;
+            if ("core".equals(r.getName())) {
+                expected = MultiRepositoryOrchestrator.Status.SUCCESS;
+            } else if ("api".equals(r.getName())) {
+                expected = MultiRepositoryOrchestrator.Status.FAILED;
+            } else {
+                expected = MultiRepositoryOrchestrator.Status.SKIPPED;
+            }
+            assertEquals(r.getName(), expected, r.getStatus());
+        }
+    }
+
+    @Test
+    public void testManifestSeparator() {
+        assertEquals(-1, GitFlowOrchestrateMojo.indexOfSeparator("core"));
+        assertEquals(3, GitFlowOrchestrateMojo.indexOfSeparator("web: core"));
+        assertEquals(-1,
+                GitFlowOrchestrateMojo.indexOfSeparator("C:\\projects\\web"));
+        assertEquals(15, GitFlowOrchestrateMojo
+                .indexOfSeparator("C:\\projects\\web: core"));
+        assertEquals(11,
+                GitFlowOrchestrateMojo.indexOfSeparator("D:/work/web:core"));
+    }
+
+    /**
+     * Pushes each repository to its remote.
+     * 
+     * @param threads
+     *            Number of threads.
+     * @return Names of the repositories in the order the pushes started.
+     * @throws InterruptedException
+     */
+    private List<String> push(final int threads) throws InterruptedException {
+        final List<String> order = Collections
+                .synchronizedList(new ArrayList<String>());
+        orchestrator.execute(new MultiRepositoryOrchestrator.Task() {
+            @Override
+            public boolean execute(
+                    final MultiRepositoryOrchestrator.Repository repository)
+                    throws Exception {
+                order.add(repository.getName());
+                return git(repository.getDirectory(), "push", "--quiet",
+                        "origin", "master");
+            }
+        }, threads);
+        return order;
+    }
+
+    private void addRepository(final String name, final String dependencies)
+            throws Exception {
+        final File remote = new File(tmp.getRoot(), name + ".git");
+        assertTrue(git(tmp.getRoot(), "init", "--quiet", "--bare",
+                remote.getPath()));
+
+        final File dir = tmp.newFolder(name);
+        final Writer writer = new FileWriter(new File(dir, "pom.xml"));
+        try {
+            writer.write("<project><modelVersion>4.0.0</modelVersion>"
+                    + "<groupId>g</groupId><artifactId>" + name
+                    + "</artifactId><version>1.0</version><dependencies>"
+                    + dependencies + "</dependencies></project>");
+        } finally {
+            writer.close();
+        }
+        assertTrue(git(dir, "init", "--quiet"));
+        assertTrue(git(dir, "checkout", "--quiet", "-b", "master"));
+        assertTrue(git(dir, "add", "pom.xml"));
+        assertTrue(git(dir, "-c", "user.name=test", "-c",
+                "user.email=test@example.com", "commit", "--quiet", "-m",
+                "init"));
+        assertTrue(git(dir, "remote", "add", "origin", fileUrl(remote)));
+
+        orchestrator.addRepository(name, dir);
+    }
+
+    private static String fileUrl(final File file) {
+        final String path = file.getAbsolutePath().replace('\\', '/');
+        return "file://" + (path.startsWith("/") ? "" : "/") + path;
+    }
+
+    /**
+     * Executes git in the directory.
+     * 
+     * @param dir
+     *            Working directory.
+     * @param args
+     *            Git arguments.
+     * @return <code>true</code> if git succeeded.
+     * @throws InterruptedException
+     */
+    private static boolean git(final File dir, final String... args)
+            throws InterruptedException {
+        final List<String> command = new ArrayList<String>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        final Process process;
+        try {
+            process = new ProcessBuilder(command).directory(dir)
+                    .redirectErrorStream(true).start();
+            final InputStream in = process.getInputStream();
+            try {
+                while (in.read() != -1) {
+                    // discard output
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return process.waitFor() == 0;
+    }
+}